@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.benchmark.handler.EchoCallHandler;
+import nl.dechateau.vertx.orchestration.benchmark.handler.PayloadCallHandler;
+import nl.dechateau.vertx.orchestration.benchmark.stub.StubVertx;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Stand-ins for the verticles called by the benchmarked sequences, replying the way a bus module does.
+ */
+final class Backends {
+    private Backends() {
+    }
+
+    /**
+     * Create a stubbed vert.x instance with the echo and payload backends registered on its event bus.
+     *
+     * @param payloadBytes The (approximate) encoded size of the payload backend's result.
+     * @return The stubbed vert.x instance.
+     */
+    static StubVertx newVertx(final int payloadBytes) {
+        final StubVertx vertx = new StubVertx();
+
+        vertx.eventBus().registerHandler(EchoCallHandler.ECHO_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                final Integer number = message.body().getInteger("input");
+                message.reply(new JsonObject()
+                        .putString("status", "ok")
+                        .putObject("result", new JsonObject().putNumber("output", number + 1)));
+            }
+        });
+
+        final JsonObject payload = newPayloadReply(payloadBytes);
+        vertx.eventBus().registerHandler(PayloadCallHandler.PAYLOAD_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                message.reply(payload);
+            }
+        });
+
+        return vertx;
+    }
+
+    static JsonObject newPayloadReply(final int payloadBytes) {
+        final JsonArray items = new JsonArray();
+        int size = 0;
+        for (int i = 0; size < payloadBytes; i++) {
+            final JsonObject item = new JsonObject()
+                    .putNumber("id", i)
+                    .putString("name", "item-" + i)
+                    .putString("description", "Description of benchmark payload item number " + i + ".");
+            items.addObject(item);
+            size += item.encode().length() + 1;
+        }
+
+        return new JsonObject()
+                .putString("status", "ok")
+                .putObject("result", new JsonObject().putArray("items", items));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.CallSequence;
+import nl.dechateau.vertx.orchestration.CallSequenceTemplate;
+import nl.dechateau.vertx.orchestration.CallSyntax;
+import nl.dechateau.vertx.orchestration.ExecutionUnit;
+import nl.dechateau.vertx.orchestration.ResponseListener;
+import nl.dechateau.vertx.orchestration.benchmark.handler.ImmediateCallHandler;
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.whenTrue;
+
+/**
+ * Cost of building call sequences and instantiating their handlers.
+ * <p/>
+ * The same sequence (three single calls and a four-way parallel unit) is registered in three ways: through a factory
+ * that uses reflection the way the builder used to, by class (method handle), and through a plain factory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+    private static final ResponseListener IGNORING_LISTENER = new ResponseListener() {
+        @Override
+        public void onCompleted(Map<String, Object> contextVars) {
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+        }
+
+        @Override
+        public void onError(ErrorType errorType, String errorMessage) {
+        }
+    };
+
+    private static final HandlerFactory<ImmediateCallHandler> REFLECTIVE = new HandlerFactory<ImmediateCallHandler>() {
+        @Override
+        public ImmediateCallHandler newHandler() {
+            try {
+                return ImmediateCallHandler.class.getConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
+                throw new CallSequence.BuilderException("Cannot instantiate handler.", ex);
+            }
+        }
+    };
+
+    private static final HandlerFactory<ImmediateCallHandler> DIRECT = new HandlerFactory<ImmediateCallHandler>() {
+        @Override
+        public ImmediateCallHandler newHandler() {
+            return new ImmediateCallHandler();
+        }
+    };
+
+    private CallSequenceTemplate template;
+
+    private ExecutionUnit<?> reflectiveUnits;
+
+    private ExecutionUnit<?> classUnits;
+
+    private ExecutionUnit<?> factoryUnits;
+
+    @Setup
+    public void setUp() {
+        template = buildWithClasses().compile();
+        reflectiveUnits = whenTrue(buildWithFactories(REFLECTIVE).compile());
+        classUnits = whenTrue(template);
+        factoryUnits = whenTrue(buildWithFactories(DIRECT).compile());
+    }
+
+    @Benchmark
+    public CallSequence buildPerRequest() {
+        return buildWithClasses().build();
+    }
+
+    @Benchmark
+    public CallSequence newSequenceFromTemplate() {
+        return template.newSequence();
+    }
+
+    @Benchmark
+    public OrchestrationContext executeReflectiveInstantiation() {
+        return execute(reflectiveUnits);
+    }
+
+    @Benchmark
+    public OrchestrationContext executeClassInstantiation() {
+        return execute(classUnits);
+    }
+
+    @Benchmark
+    public OrchestrationContext executeFactoryInstantiation() {
+        return execute(factoryUnits);
+    }
+
+    private static OrchestrationContext execute(final ExecutionUnit<?> firstUnit) {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        firstUnit.execute(context, IGNORING_LISTENER);
+        return context;
+    }
+
+    private static CallSyntax buildWithClasses() {
+        return createCallSequence(null)
+                .addCall(ImmediateCallHandler.class)
+                .addCall(ImmediateCallHandler.class)
+                .addParallelCalls(ImmediateCallHandler.class, ImmediateCallHandler.class,
+                        ImmediateCallHandler.class, ImmediateCallHandler.class)
+                .addCall(ImmediateCallHandler.class);
+    }
+
+    private static CallSyntax buildWithFactories(
+            final HandlerFactory<? extends CallHandler> factory) {
+        return createCallSequence(null)
+                .addCall(factory)
+                .addCall(factory)
+                .addParallelCalls(factory, factory, factory, factory)
+                .addCall(factory);
+    }
+}
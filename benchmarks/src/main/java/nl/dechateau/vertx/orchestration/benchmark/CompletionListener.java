@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+
+import java.util.Map;
+
+/**
+ * Listener that only remembers the outcome, so that benchmarks can hand it to a blackhole.
+ */
+final class CompletionListener implements ResponseListener {
+    private Map<String, Object> contextVars;
+
+    private String errorMessage;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCompleted(final Map<String, Object> contextVars) {
+        this.contextVars = contextVars;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(final String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onError(final ErrorType errorType, final String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @return The context variables of the last completed execution; fails when an execution did not complete.
+     */
+    Map<String, Object> takeResult() {
+        if (errorMessage != null || contextVars == null) {
+            throw new IllegalStateException("Benchmarked sequence did not complete: " + errorMessage);
+        }
+        final Map<String, Object> result = contextVars;
+        contextVars = null;
+        return result;
+    }
+}
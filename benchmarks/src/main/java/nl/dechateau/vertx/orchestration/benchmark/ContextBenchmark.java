@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.handler.IntContextKey;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and updating a context var the way a handler does, by name versus through a typed key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBenchmark {
+    private static final IntContextKey NUMBER = new IntContextKey("number");
+
+    private OrchestrationContext context;
+
+    @Setup
+    public void setUp() {
+        context = new OrchestrationContext(null);
+        context.setContextVar("number", 0);
+        context.setContextVar(NUMBER, 0);
+    }
+
+    @Benchmark
+    public Object incrementByName() {
+        return context.setContextVar("number", (Integer) context.getContextVar("number") + 1);
+    }
+
+    @Benchmark
+    public int incrementByKey() {
+        final int number = context.getContextVar(NUMBER) + 1;
+        context.setContextVar(NUMBER, number);
+        return number;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.CallSequence;
+import nl.dechateau.vertx.orchestration.CallSequenceTemplate;
+import nl.dechateau.vertx.orchestration.benchmark.handler.EchoCallHandler;
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+
+/**
+ * Execution of a single parallel unit of increasing width, all calls going to the echo backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+    @Param({"2", "16", "64"})
+    private int width;
+
+    private CallSequenceTemplate template;
+
+    private final CompletionListener listener = new CompletionListener();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        final Class<? extends CallHandler>[] handlers = new Class[width];
+        Arrays.fill(handlers, EchoCallHandler.class);
+        template = createCallSequence(Backends.newVertx(0))
+                .addParallelCalls(handlers)
+                .compile();
+    }
+
+    @Benchmark
+    public Map<String, Object> parallelCalls() {
+        final CallSequence sequence = template.newSequence();
+        sequence.setContextVar("number", 0);
+        sequence.execute(listener);
+        return listener.takeResult();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark;
+
+import nl.dechateau.vertx.orchestration.benchmark.handler.PayloadCallHandler;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.Vertx;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing of a reply by AbstractReturningCallHandler.handle(), for a small and a large (100 KB) payload.
+ * <p/>
+ * The payload backend replies with the same, pre-built message every time, so only the handler's work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplyBenchmark {
+    @Param({"100", "102400"})
+    private int payloadBytes;
+
+    private Vertx vertx;
+
+    private final CompletionListener listener = new CompletionListener();
+
+    @Setup
+    public void setUp() {
+        vertx = Backends.newVertx(payloadBytes);
+    }
+
+    @Benchmark
+    public Map<String, Object> handleReply() {
+        new PayloadCallHandler().execute(new OrchestrationContext(vertx), listener);
+        return listener.takeResult();
+    }
+}
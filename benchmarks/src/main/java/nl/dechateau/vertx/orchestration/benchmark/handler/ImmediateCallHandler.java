@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark.handler;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+
+/**
+ * Call handler that completes immediately, so that only the cost of the orchestration itself is measured.
+ */
+public class ImmediateCallHandler implements CallHandler {
+    private boolean isCompleted = false;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final OrchestrationContext orchestrationContext, final ResponseListener responseListener) {
+        isCompleted = true;
+        responseListener.onCompleted(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCompleted() {
+        return isCompleted;
+    }
+}
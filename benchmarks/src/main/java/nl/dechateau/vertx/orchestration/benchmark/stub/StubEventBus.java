@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark.stub;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-JVM event bus that delivers messages (and their replies) synchronously on the calling thread.
+ * <p/>
+ * Only JSON messages and plain handler registrations are supported; everything else is not needed to measure the
+ * orchestration and throws an {@link UnsupportedOperationException}.
+ */
+@SuppressWarnings("rawtypes")
+public final class StubEventBus implements EventBus {
+    private final Map<String, Handler<? extends Message>> handlers = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private void deliver(final String address, final Object body, final Handler<? extends Message> replyHandler) {
+        final Handler<Message> handler = (Handler<Message>) handlers.get(address);
+        if (handler != null) {
+            handler.handle(new StubMessage<>(body, (Handler<Message>) replyHandler));
+        }
+    }
+
+    @Override
+    public void close(final Handler<AsyncResult<Void>> doneHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Object message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Object message, final Handler<Message> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final JsonObject message, final Handler<Message<T>> replyHandler) {
+        deliver(address, message, replyHandler);
+        return this;
+    }
+
+    @Override
+    public EventBus send(final String address, final JsonObject message) {
+        deliver(address, message, null);
+        return this;
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final JsonArray message, final Handler<Message<T>> replyHandler) {
+        deliver(address, message, replyHandler);
+        return this;
+    }
+
+    @Override
+    public EventBus send(final String address, final JsonArray message) {
+        deliver(address, message, null);
+        return this;
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Buffer message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Buffer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final byte[] message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final byte[] message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final String message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final String message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Integer message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Integer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Long message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Long message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Float message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Float message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Double message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Double message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Boolean message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Boolean message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Short message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Short message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Character message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Character message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> EventBus send(final String address, final Byte message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus send(final String address, final Byte message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Object message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final JsonObject message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final JsonArray message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Buffer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final byte[] message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final String message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Integer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Long message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Float message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Double message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Boolean message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Short message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Character message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus publish(final String address, final Byte message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus unregisterHandler(final String address, final Handler<? extends Message> handler, final Handler<AsyncResult<Void>> resultHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus unregisterHandler(final String address, final Handler<? extends Message> handler) {
+        handlers.remove(address);
+        return this;
+    }
+
+    @Override
+    public EventBus registerHandler(final String address, final Handler<? extends Message> handler, final Handler<AsyncResult<Void>> resultHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus registerHandler(final String address, final Handler<? extends Message> handler) {
+        handlers.put(address, handler);
+        return this;
+    }
+
+    @Override
+    public EventBus registerLocalHandler(final String address, final Handler<? extends Message> handler) {
+        handlers.put(address, handler);
+        return this;
+    }
+}
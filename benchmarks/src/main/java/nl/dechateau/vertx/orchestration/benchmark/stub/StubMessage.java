@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark.stub;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Message on the {@link StubEventBus}; replying hands the reply straight to the sender's reply handler.
+ *
+ * @param <T> The type of the message body.
+ */
+@SuppressWarnings("rawtypes")
+final class StubMessage<T> implements Message<T> {
+    private final T body;
+
+    private final Handler<Message> replyHandler;
+
+    @SuppressWarnings("unchecked")
+    StubMessage(final Object body, final Handler<Message> replyHandler) {
+        this.body = (T) body;
+        this.replyHandler = replyHandler;
+    }
+
+    @Override
+    public T body() {
+        return body;
+    }
+
+    @Override
+    public String replyAddress() {
+        return null;
+    }
+
+    @Override
+    public void reply() {
+        reply((Object) null);
+    }
+
+    @Override
+    public void reply(final Object message) {
+        if (replyHandler != null) {
+            replyHandler.handle(new StubMessage<>(message, null));
+        }
+    }
+
+    @Override
+    public void reply(final JsonObject message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(final JsonArray message) {
+        reply((Object) message);
+    }
+
+    @Override
+    public void reply(final String message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Buffer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final byte[] message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Integer message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Long message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Short message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Character message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Boolean message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Float message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reply(final Double message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Object message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final JsonObject message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final JsonArray message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final String message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Buffer message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final byte[] message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Integer message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Long message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Short message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Character message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Boolean message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Float message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> void reply(final Double message, final Handler<Message<T>> replyHandler) {
+        throw new UnsupportedOperationException();
+    }
+}
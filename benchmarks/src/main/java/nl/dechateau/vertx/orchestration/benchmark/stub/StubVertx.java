@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.benchmark.stub;
+
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.file.FileSystem;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpServer;
+import org.vertx.java.core.net.NetClient;
+import org.vertx.java.core.net.NetServer;
+import org.vertx.java.core.shareddata.SharedData;
+import org.vertx.java.core.sockjs.SockJSServer;
+
+/**
+ * Single-threaded stand-in for vert.x, running everything synchronously on the calling thread.
+ * <p/>
+ * Timers are handed out but never fire, which keeps the sequence-wide timeout out of the measurements.
+ */
+public final class StubVertx implements Vertx {
+    private final StubEventBus eventBus = new StubEventBus();
+
+    private final Context context = new Context() {
+        @Override
+        public void runOnContext(final Handler<Void> action) {
+            action.handle(null);
+        }
+    };
+
+    private long lastTimerId;
+
+    @Override
+    public NetServer createNetServer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NetClient createNetClient() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HttpServer createHttpServer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public HttpClient createHttpClient() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SockJSServer createSockJSServer(final HttpServer httpServer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileSystem fileSystem() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public EventBus eventBus() {
+        return eventBus;
+    }
+
+    @Override
+    public SharedData sharedData() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long setTimer(final long delay, final Handler<Long> handler) {
+        return ++lastTimerId;
+    }
+
+    @Override
+    public long setPeriodic(final long delay, final Handler<Long> handler) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean cancelTimer(final long id) {
+        return true;
+    }
+
+    @Override
+    public Context currentContext() {
+        return context;
+    }
+
+    @Override
+    public void runOnContext(final Handler<Void> action) {
+        action.handle(null);
+    }
+
+    @Override
+    public boolean isEventLoop() {
+        return true;
+    }
+
+    @Override
+    public boolean isWorker() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        throw new UnsupportedOperationException();
+    }
+}
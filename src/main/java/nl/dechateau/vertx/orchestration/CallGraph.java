@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled, immutable graph of calls, ordered by the context vars they read and produce.
+ * <p/>
+ * A call depends on the calls producing the vars it reads; vars that no call in the graph produces are expected to be
+ * in the context already. When the graph is executed, each call is started as soon as the calls it depends on are
+ * completed, rather than when all calls of a preceding unit are. The graph is completed when all of its calls are.
+ * <p/>
+ * A graph is added to a call sequence as a single unit, with {@link CallSyntax#addCallGraph(CallGraph)}.
+ */
+public final class CallGraph {
+    private final List<HandlerTemplate<? extends CallHandler>> templates;
+
+    private final int[][] dependents;
+
+    private final int[] dependencyCounts;
+
+    private CallGraph(final List<HandlerTemplate<? extends CallHandler>> templates, final int[][] dependents,
+                      final int[] dependencyCounts) {
+        this.templates = templates;
+        this.dependents = dependents;
+        this.dependencyCounts = dependencyCounts;
+    }
+
+    public static Builder createCallGraph() {
+        return new Builder();
+    }
+
+    int getSize() {
+        return templates.size();
+    }
+
+    CallHandler newHandler(final int node) {
+        return templates.get(node).newHandler();
+    }
+
+    int[] getDependents(final int node) {
+        return dependents[node];
+    }
+
+    int[] getDependencyCounts() {
+        return dependencyCounts.clone();
+    }
+
+    public static class Builder {
+        private final List<HandlerTemplate<? extends CallHandler>> templates = new ArrayList<>();
+
+        private final List<String[]> reads = new ArrayList<>();
+
+        private final List<String[]> produces = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a call to the graph; declare the vars it reads and produces with the next methods.
+         *
+         * @param handler The handler making the call.
+         * @return The builder.
+         */
+        public final Builder addCall(final Class<? extends CallHandler> handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
+            }
+
+            return addCall(ConstructorHandlerFactory.<CallHandler>forClass(handler));
+        }
+
+        /**
+         * Add a call to the graph; declare the vars it reads and produces with the next methods.
+         *
+         * @param handler The handler making the call.
+         * @return The builder.
+         */
+        public final Builder addCall(final HandlerFactory<? extends CallHandler> handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
+            }
+
+            templates.add(new HandlerTemplate<CallHandler>(handler));
+            reads.add(new String[0]);
+            produces.add(new String[0]);
+            return this;
+        }
+
+        /**
+         * Declare the context vars read by the call added last (for typed vars, the name of their key).
+         *
+         * @param vars The names of the vars.
+         * @return The builder.
+         */
+        public final Builder reads(final String... vars) {
+            reads.set(lastCall(), vars.clone());
+            return this;
+        }
+
+        /**
+         * Declare the context vars produced by the call added last (for typed vars, the name of their key). Each var
+         * can only be produced by a single call in the graph.
+         *
+         * @param vars The names of the vars.
+         * @return The builder.
+         */
+        public final Builder produces(final String... vars) {
+            produces.set(lastCall(), vars.clone());
+            return this;
+        }
+
+        /**
+         * Build the graph.
+         *
+         * @return The (immutable) graph.
+         * @throws CallSequence.BuilderException When a var is produced by more than one call, or the calls depend on
+         *                                       each other in a cycle.
+         */
+        public final CallGraph build() {
+            if (templates.isEmpty()) {
+                throw new IllegalStateException("No calls added yet.");
+            }
+
+            final Map<String, Integer> producers = new HashMap<>();
+            for (int i = 0; i < templates.size(); i++) {
+                for (String var : produces.get(i)) {
+                    final Integer previous = producers.put(var, i);
+                    if (previous != null && previous != i) {
+                        throw new CallSequence.BuilderException(
+                                "Context var '" + var + "' is produced by more than one call.", null);
+                    }
+                }
+            }
+
+            final List<Set<Integer>> edges = new ArrayList<>();
+            for (int i = 0; i < templates.size(); i++) {
+                edges.add(new LinkedHashSet<Integer>());
+            }
+            final int[] dependencyCounts = new int[templates.size()];
+            for (int i = 0; i < templates.size(); i++) {
+                for (String var : reads.get(i)) {
+                    final Integer producer = producers.get(var);
+                    if (producer != null && producer != i && edges.get(producer).add(i)) {
+                        dependencyCounts[i]++;
+                    }
+                }
+            }
+
+            final int[][] dependents = new int[templates.size()][];
+            for (int i = 0; i < dependents.length; i++) {
+                dependents[i] = new int[edges.get(i).size()];
+                int j = 0;
+                for (Integer dependent : edges.get(i)) {
+                    dependents[i][j++] = dependent;
+                }
+            }
+            checkForCycles(dependents, dependencyCounts);
+
+            return new CallGraph(new ArrayList<>(templates), dependents, dependencyCounts);
+        }
+
+        private int lastCall() {
+            if (templates.isEmpty()) {
+                throw new IllegalStateException("No calls added yet.");
+            }
+            return templates.size() - 1;
+        }
+
+        private static void checkForCycles(final int[][] dependents, final int[] dependencyCounts) {
+            // Peel off the calls without outstanding dependencies; whatever remains is part of a cycle.
+            final int[] pending = Arrays.copyOf(dependencyCounts, dependencyCounts.length);
+            final List<Integer> ready = new ArrayList<>();
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] == 0) {
+                    ready.add(i);
+                }
+            }
+            int visited = 0;
+            while (!ready.isEmpty()) {
+                final int node = ready.remove(ready.size() - 1);
+                visited++;
+                for (int dependent : dependents[node]) {
+                    if (--pending[dependent] == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+            if (visited < pending.length) {
+                throw new CallSequence.BuilderException(
+                        "The calls in the graph depend on each other in a cycle.", null);
+            }
+        }
+    }
+}
@@ -17,23 +17,41 @@ package nl.dechateau.vertx.orchestration;
 
 import nl.dechateau.vertx.orchestration.handler.AbstractDecisionHandler;
 import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.Cancellable;
+import nl.dechateau.vertx.orchestration.handler.ConcurrencyLimit;
+import nl.dechateau.vertx.orchestration.handler.ContextKey;
+import nl.dechateau.vertx.orchestration.handler.DoubleContextKey;
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.IntContextKey;
+import nl.dechateau.vertx.orchestration.handler.LongContextKey;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
 import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Pivotal class for the orchestration: use to build call sequences and execute them.
+ * <p/>
+ * A call sequence holds the state of a single request. When the same sequence is executed for many requests, compile
+ * it once into a {@link CallSequenceTemplate} and create a new call sequence from that for every request.
  */
 public final class CallSequence implements ResponseListener {
     private static final Logger LOG = LoggerFactory.getLogger(CallSequence.class);
 
     private static final long DEFAULT_REQUEST_TIMEOUT = 10000;
 
+    private static final String DEFAULT_NAME = "default";
+
     private final Vertx vertx;
 
     private final OrchestrationContext context;
@@ -48,11 +66,23 @@ public final class CallSequence implements ResponseListener {
 
     private long timer;
 
-    private CallSequence(final Builder builder) {
-        vertx = builder.vertx;
-        firstUnit = builder.firstUnit;
+    private final String name;
+
+    private OrchestrationMetrics metrics;
+
+    private long startedAt;
+
+    private ConcurrencyLimit limit;
 
-        context = new OrchestrationContext(vertx);
+    private long admittedAt;
+
+    CallSequence(final Vertx vertx, final ExecutionUnit<?> firstUnit, final CallPolicies policies,
+                 final String name) {
+        this.vertx = vertx;
+        this.firstUnit = firstUnit;
+        this.name = name;
+
+        context = new OrchestrationContext(vertx, policies);
 
         timeout = DEFAULT_REQUEST_TIMEOUT;
     }
@@ -67,6 +97,46 @@ public final class CallSequence implements ResponseListener {
         return context.setContextVar(key, value);
     }
 
+    /**
+     * Set a typed parameter in the orchestration context. Such values are for use by the call handlers.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    public final <T> T setContextVar(final ContextKey<T> key, final T value) {
+        return context.setContextVar(key, value);
+    }
+
+    /**
+     * Set a typed parameter in the orchestration context. Such values are for use by the call handlers.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    public final void setContextVar(final IntContextKey key, final int value) {
+        context.setContextVar(key, value);
+    }
+
+    /**
+     * Set a typed parameter in the orchestration context. Such values are for use by the call handlers.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    public final void setContextVar(final LongContextKey key, final long value) {
+        context.setContextVar(key, value);
+    }
+
+    /**
+     * Set a typed parameter in the orchestration context. Such values are for use by the call handlers.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    public final void setContextVar(final DoubleContextKey key, final double value) {
+        context.setContextVar(key, value);
+    }
+
     /**
      * Override the default time value of 10 seconds.
      *
@@ -76,6 +146,15 @@ public final class CallSequence implements ResponseListener {
         this.timeout = timeout;
     }
 
+    /**
+     * @return The trace of the execution of this sequence, or <code>null</code> if it isn't traced; it is complete by
+     * the time the outcome is reported.
+     * @see CallPolicies#trace(nl.dechateau.vertx.orchestration.handler.TraceSink, double)
+     */
+    public final ExecutionTrace getTrace() {
+        return context.getTrace();
+    }
+
     /**
      * Start the defined call sequence.
      *
@@ -86,18 +165,53 @@ public final class CallSequence implements ResponseListener {
             throw new IllegalStateException("Executing call sequence without defining it first.");
         }
 
-        // Set a timeout for the entire sequence of calls.
+        this.listener = listener;
+        metrics = context.getMetrics();
+        if (metrics != null) {
+            startedAt = System.nanoTime();
+            metrics.onSequenceStarted(name);
+        }
+        context.startTrace();
+
+        // Set a timeout for the entire sequence of calls, and let the handlers know about it.
+        context.setDeadline(timeout);
         timer = vertx.setTimer(timeout, new Handler<Long>() {
             @Override
             public void handle(final Long timedOut) {
                 committed = true;
+                context.cancel();
+                recordOutcome(true, ErrorType.TIMEOUT, "Timeout occurred handling request.");
                 listener.onError(ResponseListener.ErrorType.TIMEOUT, "Timeout occurred handling request.");
             }
         });
 
-        // Start the sequence.
-        this.listener = listener;
-        firstUnit.execute(context, this);
+        final ConcurrencyLimit sequenceLimit = context.getSequenceLimit(name);
+        if (sequenceLimit == null) {
+            // Start the sequence.
+            firstUnit.execute(context, this);
+            return;
+        }
+
+        // Start the sequence once the limit allows it.
+        final Cancellable admission = sequenceLimit.admit(vertx.currentContext(), new Handler<Void>() {
+            @Override
+            public void handle(final Void event) {
+                if (committed) {
+                    // Timed out while waiting.
+                    sequenceLimit.release();
+                    return;
+                }
+                limit = sequenceLimit;
+                admittedAt = System.nanoTime();
+                firstUnit.execute(context, CallSequence.this);
+            }
+        });
+        if (admission == null) {
+            onError(ErrorType.SERVICE_UNAVAILABLE, "Too many executions of sequence " + name + " in progress.");
+            return;
+        }
+        // Leave the queue when the sequence times out while waiting, to make room for executions that can still make it.
+        context.addCancellable(admission);
     }
 
     /**
@@ -111,6 +225,8 @@ public final class CallSequence implements ResponseListener {
         }
         committed = true;
         vertx.cancelTimer(timer);
+        context.cancel();
+        recordOutcome(false, null, null);
 
         listener.onCompleted(vars);
     }
@@ -126,6 +242,8 @@ public final class CallSequence implements ResponseListener {
         }
         committed = true;
         vertx.cancelTimer(timer);
+        context.cancel();
+        recordOutcome(true, null, errorMessage);
 
         listener.onError(errorMessage);
     }
@@ -141,31 +259,107 @@ public final class CallSequence implements ResponseListener {
         }
         committed = true;
         vertx.cancelTimer(timer);
+        context.cancel();
+        recordOutcome(true, errorType, errorMessage);
 
         listener.onError(errorType, errorMessage);
     }
 
+    private void recordOutcome(final boolean isFailed, final ErrorType errorType, final String errorMessage) {
+        if (limit != null) {
+            limit.release(System.nanoTime() - admittedAt, errorType == ErrorType.TIMEOUT);
+            limit = null;
+        }
+
+        if (metrics != null) {
+            final long latency = System.nanoTime() - startedAt;
+            if (isFailed) {
+                metrics.onSequenceFailed(name, errorType, latency);
+            } else {
+                metrics.onSequenceCompleted(name, latency);
+            }
+        }
+
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            trace.complete(errorMessage);
+        }
+    }
+
     public static class Builder implements CallSyntax {
         private final Vertx vertx;
 
+        private final CallPolicies policies;
+
         private ExecutionUnit<?> firstUnit;
 
-        private Builder(Vertx vertx) {
+        private ExecutionUnit<?> lastUnit;
+
+        private CallSequenceTemplate template;
+
+        private String name = DEFAULT_NAME;
+
+        private Builder(Vertx vertx, CallPolicies policies) {
             this.vertx = vertx;
+            this.policies = policies;
         }
 
         public static CallSyntax createCallSequence(Vertx vertx) {
-            return new Builder(vertx);
+            return new Builder(vertx, null);
+        }
+
+        /**
+         * Start building a call sequence whose calls are subject to the given policies. The policies also apply to the
+         * paths of its decisions, which can therefore be built without them.
+         *
+         * @param vertx    The vert.x instance.
+         * @param policies The policies for the calls to specific destinations.
+         * @return The builder.
+         */
+        public static CallSyntax createCallSequence(Vertx vertx, CallPolicies policies) {
+            return new Builder(vertx, policies);
         }
 
         public static ExecutionUnit<?> whenTrue(final CallSequence callSequence) {
             return callSequence.firstUnit;
         }
 
+        public static ExecutionUnit<?> whenTrue(final CallSequenceTemplate template) {
+            return template.getFirstUnit();
+        }
+
         public static ExecutionUnit<?> whenFalse(final CallSequence callSequence) {
             return callSequence.firstUnit;
         }
 
+        public static ExecutionUnit<?> whenFalse(final CallSequenceTemplate template) {
+            return template.getFirstUnit();
+        }
+
+        public static ExecutionUnit<?> inputs(final CallSequence callSequence) {
+            return callSequence.firstUnit;
+        }
+
+        public static ExecutionUnit<?> inputs(final CallSequenceTemplate template) {
+            return template.getFirstUnit();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax named(final String name) {
+            if (name == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to name a call sequence.");
+            }
+            if (template != null) {
+                throw new IllegalStateException("Call sequence has already been built.");
+            }
+
+            this.name = name;
+            return this;
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -175,15 +369,22 @@ public final class CallSequence implements ResponseListener {
                 throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
             }
 
-            // Instantiate an execution unit with this single call handler.
-            ExecutionUnit<CallHandler> unit = new ExecutionUnit<>();
-            try {
-                unit.addHandler(handler.getConstructor().newInstance());
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
-                LOG.error("Problem instantiating handler for class {}: {}.", handler.getName(), ex.getMessage());
-                throw new BuilderException("Cannot instantiate handler.", ex);
+            return addCall(ConstructorHandlerFactory.<CallHandler>forClass(handler));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addCall(final HandlerFactory<? extends CallHandler> handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
             }
 
+            // Define an execution unit with this single call handler.
+            ExecutionUnit<CallHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate<CallHandler>(handler));
+
             addUnitToSequence(unit);
 
             return this;
@@ -195,21 +396,182 @@ public final class CallSequence implements ResponseListener {
         @Override
         @SafeVarargs
         public final CallSyntax addParallelCalls(final Class<? extends CallHandler>... handlers) {
+            return addParallelCalls(null, handlers);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addParallelCalls(final MergePolicy mergePolicy,
+                                                 final Class<? extends CallHandler>... handlers) {
             if (handlers == null || handlers.length == 0) {
                 throw new IllegalArgumentException("Received NULL or empty list in an attempt to add a set of service call handlers.");
             }
 
-            // Instantiate an execution unit with these call handlers.
-            ExecutionUnit<CallHandler> unit = new ExecutionUnit<>();
+            // Define an execution unit with these call handlers.
+            ExecutionUnit<CallHandler> unit = new ExecutionUnit<>(mergePolicy);
             for (Class<? extends CallHandler> handler : handlers) {
-                try {
-                    unit.addHandler(handler.getConstructor().newInstance());
-                } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
-                    LOG.error("Problem instantiating handler for class {}: {}.", handler.getName(), ex.getMessage());
-                    throw new BuilderException("Cannot instantiate handler.", ex);
+                unit.addHandler(new HandlerTemplate<>(ConstructorHandlerFactory.<CallHandler>forClass(handler)));
+            }
+
+            addUnitToSequence(unit);
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addParallelCalls(final HandlerFactory<? extends CallHandler>... handlers) {
+            return addParallelCalls(null, handlers);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addParallelCalls(final MergePolicy mergePolicy,
+                                                 final HandlerFactory<? extends CallHandler>... handlers) {
+            if (handlers == null || handlers.length == 0) {
+                throw new IllegalArgumentException("Received NULL or empty list in an attempt to add a set of service call handlers.");
+            }
+
+            // Define an execution unit with these call handlers.
+            ExecutionUnit<CallHandler> unit = new ExecutionUnit<>(mergePolicy);
+            for (HandlerFactory<? extends CallHandler> handler : handlers) {
+                unit.addHandler(new HandlerTemplate<CallHandler>(handler));
+            }
+
+            addUnitToSequence(unit);
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addCallGraph(final CallGraph graph) {
+            if (graph == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a call graph.");
+            }
+
+            // Define an execution unit that executes the graph as a whole.
+            ExecutionUnit<OrchestrationHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate<>(new HandlerFactory<OrchestrationHandler>() {
+                @Override
+                public OrchestrationHandler newHandler() {
+                    return new GraphExecution(graph);
                 }
+            }));
+
+            addUnitToSequence(unit);
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addForEach(final ForEach forEach) {
+            if (forEach == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a for-each.");
             }
 
+            // Define an execution unit that executes the calls for all items as a whole.
+            ExecutionUnit<OrchestrationHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate<>(new HandlerFactory<OrchestrationHandler>() {
+                @Override
+                public OrchestrationHandler newHandler() {
+                    return new ForEachExecution(forEach);
+                }
+            }));
+
+            addUnitToSequence(unit);
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addScatterGather(final int quorum, final MergePolicy mergePolicy,
+                                                 final Class<? extends CallHandler>... handlers) {
+            if (handlers == null || handlers.length == 0) {
+                throw new IllegalArgumentException(
+                        "Received NULL or empty list in an attempt to add a set of service call handlers.");
+            }
+
+            final List<HandlerFactory<? extends CallHandler>> calls = new ArrayList<>(handlers.length);
+            for (Class<? extends CallHandler> handler : handlers) {
+                calls.add(ConstructorHandlerFactory.<CallHandler>forClass(handler));
+            }
+            return addScatterGather(quorum, mergePolicy, calls);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addScatterGather(final int quorum, final MergePolicy mergePolicy,
+                                                 final HandlerFactory<? extends CallHandler>... handlers) {
+            if (handlers == null || handlers.length == 0) {
+                throw new IllegalArgumentException(
+                        "Received NULL or empty list in an attempt to add a set of service call handlers.");
+            }
+
+            final List<HandlerFactory<? extends CallHandler>> calls = new ArrayList<>(handlers.length);
+            for (HandlerFactory<? extends CallHandler> handler : handlers) {
+                calls.add(handler);
+            }
+            return addScatterGather(quorum, mergePolicy, calls);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addFirstReply(final Class<? extends CallHandler>... handlers) {
+            return addScatterGather(1, MergePolicy.FIRST_WRITE_WINS, handlers);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        @SafeVarargs
+        public final CallSyntax addFirstReply(final HandlerFactory<? extends CallHandler>... handlers) {
+            return addScatterGather(1, MergePolicy.FIRST_WRITE_WINS, handlers);
+        }
+
+        private CallSyntax addScatterGather(final int quorum, final MergePolicy mergePolicy,
+                                            final List<HandlerFactory<? extends CallHandler>> calls) {
+            if (quorum < 1 || quorum > calls.size()) {
+                throw new IllegalArgumentException("Quorum should be between 1 and the number of calls.");
+            }
+            if (mergePolicy == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a merge policy.");
+            }
+
+            // Define an execution unit that executes the calls as a whole.
+            ExecutionUnit<OrchestrationHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate<>(new HandlerFactory<OrchestrationHandler>() {
+                @Override
+                public OrchestrationHandler newHandler() {
+                    return new ScatterGather(calls, quorum, mergePolicy);
+                }
+            }));
+
             addUnitToSequence(unit);
 
             return this;
@@ -224,25 +586,26 @@ public final class CallSequence implements ResponseListener {
             if (handler == null) {
                 throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
             }
+
+            return addDecision(ConstructorHandlerFactory.<AbstractDecisionHandler>forClass(handler), whenTrue);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                                            final ExecutionUnit<?> whenTrue) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
+            }
             if (whenTrue == null) {
                 throw new IllegalArgumentException("Missing whenTrue option for decision handler.");
             }
 
-            // Instantiate an execution unit with this decision handler.
-            ExecutionUnit<AbstractDecisionHandler> unit = new ExecutionUnit<>();
-            AbstractDecisionHandler decision = null;
-            try {
-                decision = handler.getConstructor().newInstance();
-                unit.addHandler(decision);
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
-                LOG.error("Problem instantiating handler for class {}: {}.", handler.getName(), ex.getMessage());
-                throw new BuilderException("Cannot instantiate handler.", ex);
-            }
-
-            // Add whenTrue and whenFalse to the decision handler.
-            if (decision != null) {
-                decision.setWhenTrue(whenTrue);
-            }
+            // Define an execution unit with this decision handler.
+            ExecutionUnit<AbstractDecisionHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate.Decision(handler, whenTrue, null));
 
             addUnitToSequence(unit);
 
@@ -258,51 +621,105 @@ public final class CallSequence implements ResponseListener {
             if (handler == null) {
                 throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
             }
+
+            return addDecision(ConstructorHandlerFactory.<AbstractDecisionHandler>forClass(handler), whenTrue, whenFalse);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                                            final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
+            }
             if (whenTrue == null || whenFalse == null) {
                 throw new IllegalArgumentException("Missing whenTrue or/and whenFalse options for decision handler.");
             }
 
-            // Instantiate an execution unit with this decision handler.
-            ExecutionUnit<AbstractDecisionHandler> unit = new ExecutionUnit<>();
-            AbstractDecisionHandler decision = null;
-            try {
-                decision = handler.getConstructor().newInstance();
-                unit.addHandler(decision);
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
-                LOG.error("Problem instantiating handler for class {}: {}.", handler.getName(), ex.getMessage());
-                throw new BuilderException("Cannot instantiate handler.", ex);
+            // Define an execution unit with this decision handler.
+            ExecutionUnit<AbstractDecisionHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate.Decision(handler, whenTrue, whenFalse));
+
+            addUnitToSequence(unit);
+
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addSpeculativeDecision(final Class<? extends AbstractDecisionHandler> handler,
+                                                       final ExecutionUnit<?> inputs,
+                                                       final ExecutionUnit<?> whenTrue,
+                                                       final ExecutionUnit<?> whenFalse) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
             }
 
-            // Add whenTrue and whenFalse to the decision handler.
-            if (decision != null) {
-                decision.setWhenTrue(whenTrue);
-                decision.setWhenFalse(whenFalse);
+            return addSpeculativeDecision(ConstructorHandlerFactory.<AbstractDecisionHandler>forClass(handler),
+                    inputs, whenTrue, whenFalse);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSyntax addSpeculativeDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                                                       final ExecutionUnit<?> inputs,
+                                                       final ExecutionUnit<?> whenTrue,
+                                                       final ExecutionUnit<?> whenFalse) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a decision handler.");
+            }
+            if (inputs == null) {
+                throw new IllegalArgumentException("Missing inputs for speculative decision handler.");
             }
+            if (whenTrue == null || whenFalse == null) {
+                throw new IllegalArgumentException("Missing whenTrue or/and whenFalse options for decision handler.");
+            }
+
+            // Define an execution unit with this decision handler.
+            ExecutionUnit<AbstractDecisionHandler> unit = new ExecutionUnit<>(null);
+            unit.addHandler(new HandlerTemplate.Decision(handler, inputs, whenTrue, whenFalse));
 
             addUnitToSequence(unit);
 
             return this;
         }
 
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public final CallSequenceTemplate compile() {
+            if (template == null) {
+                template = new CallSequenceTemplate(vertx, firstUnit, policies, name);
+            }
+            return template;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
         public final CallSequence build() {
-            return new CallSequence(this);
+            return compile().newSequence();
         }
 
         private void addUnitToSequence(final ExecutionUnit<?> unit) {
-            if (firstUnit == null) {
-                firstUnit = unit;
-                return;
+            if (template != null) {
+                throw new IllegalStateException("Call sequence has already been built.");
             }
 
-            ExecutionUnit<?> last = firstUnit;
-            while (last.getNext() != null) {
-                last = last.getNext();
+            if (firstUnit == null) {
+                firstUnit = unit;
+            } else {
+                lastUnit.link(unit);
             }
-            last.setNext(unit);
+            lastUnit = unit;
         }
     }
 
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import org.vertx.java.core.Vertx;
+
+/**
+ * Compiled, immutable plan of a call sequence.
+ * <p/>
+ * A template is meant to be built once (e.g. when the verticle starts) and shared by all requests; each request then
+ * spawns its own lightweight {@link CallSequence} from it. The template itself holds no per-request state, so it can
+ * safely be used from multiple threads.
+ */
+public final class CallSequenceTemplate {
+    private final Vertx vertx;
+
+    private final ExecutionUnit<?> firstUnit;
+
+    private final CallPolicies policies;
+
+    private final String name;
+
+    CallSequenceTemplate(final Vertx vertx, final ExecutionUnit<?> firstUnit, final CallPolicies policies,
+                         final String name) {
+        this.vertx = vertx;
+        this.firstUnit = firstUnit;
+        this.policies = policies;
+        this.name = name;
+    }
+
+    /**
+     * Create a new call sequence, ready to be executed for a single request.
+     *
+     * @return The call sequence, with its own (empty) context.
+     */
+    public CallSequence newSequence() {
+        return new CallSequence(vertx, firstUnit, policies, name);
+    }
+
+    ExecutionUnit<?> getFirstUnit() {
+        return firstUnit;
+    }
+}
@@ -17,20 +17,163 @@ package nl.dechateau.vertx.orchestration;
 
 import nl.dechateau.vertx.orchestration.handler.AbstractDecisionHandler;
 import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
 
 /**
  * Interface for the fluent API of the call sequence builder.
  */
 public interface CallSyntax {
+    /**
+     * Name the call sequence, for its metrics.
+     *
+     * @param name The name of the sequence.
+     * @return The builder.
+     */
+    CallSyntax named(final String name);
+
     CallSyntax addCall(final Class<? extends CallHandler> handler);
 
+    CallSyntax addCall(final HandlerFactory<? extends CallHandler> handler);
+
     CallSyntax addParallelCalls(final Class<? extends CallHandler>... handlers);
 
+    CallSyntax addParallelCalls(final HandlerFactory<? extends CallHandler>... handlers);
+
+    /**
+     * Add calls to be made in parallel, each with its own fork of the context so that they can't interfere; their
+     * changes to the context are merged when all calls are completed.
+     *
+     * @param mergePolicy The policy for context vars changed by more than one of the calls.
+     * @param handlers    The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addParallelCalls(final MergePolicy mergePolicy, final Class<? extends CallHandler>... handlers);
+
+    /**
+     * Add calls to be made in parallel, each with its own fork of the context so that they can't interfere; their
+     * changes to the context are merged when all calls are completed.
+     *
+     * @param mergePolicy The policy for context vars changed by more than one of the calls.
+     * @param handlers    The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addParallelCalls(final MergePolicy mergePolicy, final HandlerFactory<? extends CallHandler>... handlers);
+
+    /**
+     * Add a graph of calls, each of which is started as soon as the calls producing its inputs are completed.
+     *
+     * @param graph The graph.
+     * @return The builder.
+     */
+    CallSyntax addCallGraph(final CallGraph graph);
+
+    /**
+     * Add a call for every item of a collection in the context, with a bounded number of calls in progress at the same
+     * time.
+     *
+     * @param forEach The for-each.
+     * @return The builder.
+     */
+    CallSyntax addForEach(final ForEach forEach);
+
+    /**
+     * Add calls to be made in parallel (e.g. to replicas of the same service), each with its own fork of the context;
+     * the unit completes as soon as a quorum of the calls has completed, upon which the other calls are cancelled. The
+     * changes of the completed calls are merged in the order in which they completed. Failed calls are tolerated as
+     * long as the quorum can still be reached.
+     *
+     * @param quorum      The number of calls that need to complete.
+     * @param mergePolicy The policy for context vars changed by more than one of the completed calls.
+     * @param handlers    The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addScatterGather(final int quorum, final MergePolicy mergePolicy,
+                                final Class<? extends CallHandler>... handlers);
+
+    /**
+     * Add calls to be made in parallel (e.g. to replicas of the same service), each with its own fork of the context;
+     * the unit completes as soon as a quorum of the calls has completed, upon which the other calls are cancelled. The
+     * changes of the completed calls are merged in the order in which they completed. Failed calls are tolerated as
+     * long as the quorum can still be reached.
+     *
+     * @param quorum      The number of calls that need to complete.
+     * @param mergePolicy The policy for context vars changed by more than one of the completed calls.
+     * @param handlers    The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addScatterGather(final int quorum, final MergePolicy mergePolicy,
+                                final HandlerFactory<? extends CallHandler>... handlers);
+
+    /**
+     * Add calls to be made in parallel, of which only the first to complete is used; the other calls are cancelled.
+     *
+     * @param handlers The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addFirstReply(final Class<? extends CallHandler>... handlers);
+
+    /**
+     * Add calls to be made in parallel, of which only the first to complete is used; the other calls are cancelled.
+     *
+     * @param handlers The handlers making the calls.
+     * @return The builder.
+     */
+    CallSyntax addFirstReply(final HandlerFactory<? extends CallHandler>... handlers);
+
     CallSyntax addDecision(final Class<? extends AbstractDecisionHandler> handler,
                            final ExecutionUnit<?> whenTrue);
 
+    CallSyntax addDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                           final ExecutionUnit<?> whenTrue);
+
     CallSyntax addDecision(final Class<? extends AbstractDecisionHandler> handler,
                            final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse);
 
+    CallSyntax addDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                           final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse);
+
+    /**
+     * Add a decision that is made speculatively: both paths are started right away, together with the calls that
+     * provide the inputs of the decision. Once the inputs are available, the chosen path is kept and the other one is
+     * cancelled.
+     *
+     * @param handler   The handler making the decision.
+     * @param inputs    The calls providing the inputs of the decision.
+     * @param whenTrue  The path when the decision is <code>true</code>.
+     * @param whenFalse The path when the decision is <code>false</code>.
+     * @return The builder.
+     */
+    CallSyntax addSpeculativeDecision(final Class<? extends AbstractDecisionHandler> handler,
+                                      final ExecutionUnit<?> inputs,
+                                      final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse);
+
+    /**
+     * Add a decision that is made speculatively: both paths are started right away, together with the calls that
+     * provide the inputs of the decision. Once the inputs are available, the chosen path is kept and the other one is
+     * cancelled.
+     *
+     * @param handler   The handler making the decision.
+     * @param inputs    The calls providing the inputs of the decision.
+     * @param whenTrue  The path when the decision is <code>true</code>.
+     * @param whenFalse The path when the decision is <code>false</code>.
+     * @return The builder.
+     */
+    CallSyntax addSpeculativeDecision(final HandlerFactory<? extends AbstractDecisionHandler> handler,
+                                      final ExecutionUnit<?> inputs,
+                                      final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse);
+
+    /**
+     * Compile the sequence into a reusable template, from which a new call sequence can be created for every request.
+     *
+     * @return The (immutable) template.
+     */
+    CallSequenceTemplate compile();
+
+    /**
+     * Build a call sequence for a single execution; equivalent to <code>compile().newSequence()</code>.
+     *
+     * @return The call sequence.
+     */
     CallSequence build();
 }
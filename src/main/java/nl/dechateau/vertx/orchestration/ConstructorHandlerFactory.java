@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Factory for handlers that are registered by class, invoking their public no-arg constructor through a method handle.
+ * <p/>
+ * The method handle is looked up once per handler class and shared by all call sequences using that class.
+ *
+ * @param <T> The type of the handlers.
+ */
+final class ConstructorHandlerFactory<T extends OrchestrationHandler> implements HandlerFactory<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(ConstructorHandlerFactory.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class);
+
+    private static final MethodType INVOCATION_TYPE = MethodType.methodType(Object.class);
+
+    private static final ClassValue<ConstructorHandlerFactory<?>> FACTORIES = new ClassValue<ConstructorHandlerFactory<?>>() {
+        @Override
+        protected ConstructorHandlerFactory<?> computeValue(final Class<?> type) {
+            try {
+                return new ConstructorHandlerFactory<>(type, MethodHandles.publicLookup()
+                        .findConstructor(type, CONSTRUCTOR_TYPE)
+                        .asType(INVOCATION_TYPE));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                LOG.error("Problem instantiating handler for class {}: {}.", type.getName(), ex.getMessage());
+                throw new CallSequence.BuilderException("Cannot instantiate handler.", ex);
+            }
+        }
+    };
+
+    private final Class<?> type;
+
+    private final MethodHandle constructor;
+
+    private ConstructorHandlerFactory(final Class<?> type, final MethodHandle constructor) {
+        this.type = type;
+        this.constructor = constructor;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends OrchestrationHandler> HandlerFactory<T> forClass(final Class<? extends T> handler) {
+        return (HandlerFactory<T>) FACTORIES.get(handler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T newHandler() {
+        try {
+            return (T) (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            LOG.error("Problem instantiating handler for class {}: {}.", type.getName(), ex.getMessage());
+            throw new CallSequence.BuilderException("Cannot instantiate handler.", (Exception) ex);
+        }
+    }
+}
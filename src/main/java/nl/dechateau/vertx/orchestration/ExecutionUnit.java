@@ -15,44 +15,101 @@
  */
 package nl.dechateau.vertx.orchestration;
 
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
 import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
 import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Unit in which a number (>= 1) of handlers are executed in parallel.
+ * <p/>
+ * A unit only describes which handlers are to be executed; it is immutable once its call sequence has been built and
+ * may be shared between concurrent executions. Every execution creates its own handler instances.
+ * <p/>
+ * When the unit has a merge policy, each handler works on its own fork of the context, and the changes are merged at the
+ * end of the unit; otherwise all handlers share the context.
  *
  * @param <T> The type of the handlers.
  */
-public final class ExecutionUnit<T extends OrchestrationHandler> implements ResponseListener {
+public final class ExecutionUnit<T extends OrchestrationHandler> {
     private static final Logger LOG = LoggerFactory.getLogger(ExecutionUnit.class);
 
-    private final Set<T> handlers;
+    private final List<HandlerTemplate<? extends T>> handlers;
 
     private ExecutionUnit<? extends OrchestrationHandler> next;
 
-    private OrchestrationContext context;
-
-    private ResponseListener responseListener;
+    private final MergePolicy mergePolicy;
 
+    /**
+     * @deprecated Units are created by the {@link CallSequence.Builder}; build sequences through its methods instead.
+     */
+    @Deprecated
     public ExecutionUnit() {
-        handlers = new HashSet<>();
+        this(null);
     }
 
-    public boolean addHandler(final T handler) {
+    /**
+     * @param mergePolicy The policy for merging the forks of the handlers, or <code>null</code> to have the handlers
+     *                    share the context.
+     */
+    ExecutionUnit(final MergePolicy mergePolicy) {
+        handlers = new ArrayList<>();
+        this.mergePolicy = mergePolicy;
+    }
+
+    boolean addHandler(final HandlerTemplate<? extends T> handler) {
         return handlers.add(handler);
     }
 
+    /**
+     * Add a handler instance to the unit. The instance is shared by all executions of the unit, so a unit built this
+     * way should only be executed once.
+     *
+     * @param handler The handler.
+     * @return Whether the handler was added.
+     * @deprecated Add handlers through the {@link CallSequence.Builder}, which creates fresh instances per execution.
+     */
+    @Deprecated
+    public boolean addHandler(final T handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Received NULL in an attempt to add a handler.");
+        }
+
+        return handlers.add(new HandlerTemplate<>(new HandlerFactory<T>() {
+            @Override
+            public T newHandler() {
+                return handler;
+            }
+        }));
+    }
+
+    List<HandlerTemplate<? extends T>> getHandlers() {
+        return handlers;
+    }
+
+    MergePolicy getMergePolicy() {
+        return mergePolicy;
+    }
+
     ExecutionUnit<?> getNext() {
         return next;
     }
 
+    /**
+     * @param next The unit to execute after this one.
+     * @deprecated Units are chained by the {@link CallSequence.Builder}.
+     */
+    @Deprecated
     public void setNext(final ExecutionUnit<? extends OrchestrationHandler> next) {
+        link(next);
+    }
+
+    void link(final ExecutionUnit<? extends OrchestrationHandler> next) {
         if (this.next != null) {
             throw new IllegalStateException("Next unit already set.");
         }
@@ -61,46 +118,16 @@ public final class ExecutionUnit<T extends OrchestrationHandler> implements Resp
     }
 
     public void execute(final OrchestrationContext orchestrationContext, final ResponseListener responseListener) {
-        this.context = orchestrationContext;
-
         if (handlers.isEmpty()) {
             throw new IllegalStateException("No handlers added yet.");
         }
 
-        this.responseListener = responseListener;
-
-        for (T handler : handlers) {
-            handler.execute(orchestrationContext, this);
-        }
-    }
-
-    @Override
-    public void onCompleted(Map<String, Object> vars) {
-        for (T handler : handlers) {
-            if (!handler.isCompleted()) {
-                // At least one handler is not ready yet, so don't proceed.
-                LOG.trace("Method onCompleted() called, but waiting for other handlers in the group to complete.");
-                return;
-            }
-        }
-
-        // All handlers onCompleted; move to the next unit.
-        if (next != null) {
-            next.execute(context, responseListener);
+        if (orchestrationContext.isCancelled()) {
+            // The outcome has already been decided; don't start any more calls.
+            LOG.debug("Orchestration has been cancelled, not executing unit.");
             return;
         }
 
-        // End of the line; report to the caller.
-        responseListener.onCompleted(vars);
-    }
-
-    @Override
-    public void onError(final String errorMessage) {
-        responseListener.onError(errorMessage);
-    }
-
-    @Override
-    public void onError(final ErrorType type, final String errorMessage) {
-        responseListener.onError(type, errorMessage);
+        new UnitExecution(this, orchestrationContext, responseListener).start();
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+
+/**
+ * Compiled, immutable plan for making a call for every item of a collection in the context.
+ * <p/>
+ * Each call gets its own fork of the context, holding the item as a var. At most a given number of calls is in progress
+ * at the same time; whenever one completes, the call for the next item is started. The result of each call is put in a
+ * list in the context as soon as the call completes, at the position of its item; the changes the calls make to other
+ * vars are discarded. The for-each is completed when the calls for all items are.
+ * <p/>
+ * A for-each is added to a call sequence as a single unit, with {@link CallSyntax#addForEach(ForEach)}.
+ */
+public final class ForEach {
+    private final String itemsVar;
+
+    private final String itemVar;
+
+    private final HandlerTemplate<? extends CallHandler> template;
+
+    private final String resultVar;
+
+    private final String resultsVar;
+
+    private final int maxConcurrency;
+
+    private ForEach(final Builder builder) {
+        itemsVar = builder.itemsVar;
+        itemVar = builder.itemVar;
+        template = builder.template;
+        resultVar = builder.resultVar;
+        resultsVar = builder.resultsVar;
+        maxConcurrency = builder.maxConcurrency;
+    }
+
+    /**
+     * @param itemsVar The context var holding the items (an {@link Iterable}, such as a collection or a JSON array).
+     * @param itemVar  The context var that holds the item in the context of each call.
+     * @return The builder.
+     */
+    public static Builder createForEach(final String itemsVar, final String itemVar) {
+        if (itemsVar == null || itemVar == null) {
+            throw new IllegalArgumentException("Received NULL in an attempt to name the vars for the items.");
+        }
+
+        return new Builder(itemsVar, itemVar);
+    }
+
+    String getItemsVar() {
+        return itemsVar;
+    }
+
+    String getItemVar() {
+        return itemVar;
+    }
+
+    CallHandler newHandler() {
+        return template.newHandler();
+    }
+
+    String getResultVar() {
+        return resultVar;
+    }
+
+    String getResultsVar() {
+        return resultsVar;
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public static class Builder {
+        private final String itemsVar;
+
+        private final String itemVar;
+
+        private HandlerTemplate<? extends CallHandler> template;
+
+        private String resultVar;
+
+        private String resultsVar;
+
+        private int maxConcurrency = Integer.MAX_VALUE;
+
+        private Builder(final String itemsVar, final String itemVar) {
+            this.itemsVar = itemsVar;
+            this.itemVar = itemVar;
+        }
+
+        /**
+         * Set the call to make for every item.
+         *
+         * @param handler The handler making the call.
+         * @return The builder.
+         */
+        public final Builder call(final Class<? extends CallHandler> handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
+            }
+
+            return call(ConstructorHandlerFactory.<CallHandler>forClass(handler));
+        }
+
+        /**
+         * Set the call to make for every item.
+         *
+         * @param handler The handler making the call.
+         * @return The builder.
+         */
+        public final Builder call(final HandlerFactory<? extends CallHandler> handler) {
+            if (handler == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to add a service call handler.");
+            }
+
+            template = new HandlerTemplate<CallHandler>(handler);
+            return this;
+        }
+
+        /**
+         * Collect the results of the calls in a list, in the order of the items.
+         *
+         * @param resultVar  The context var in which each call puts its result.
+         * @param resultsVar The context var to hold the list of results.
+         * @return The builder.
+         */
+        public final Builder collect(final String resultVar, final String resultsVar) {
+            if (resultVar == null || resultsVar == null) {
+                throw new IllegalArgumentException("Received NULL in an attempt to name the vars for the results.");
+            }
+
+            this.resultVar = resultVar;
+            this.resultsVar = resultsVar;
+            return this;
+        }
+
+        /**
+         * Limit the number of calls in progress at the same time (unlimited by default).
+         *
+         * @param maxConcurrency The maximum number of calls in progress.
+         * @return The builder.
+         */
+        public final Builder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("Maximum number of calls in progress should be at least 1.");
+            }
+
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Build the for-each.
+         *
+         * @return The (immutable) for-each.
+         * @throws CallSequence.BuilderException When no call was set.
+         */
+        public final ForEach build() {
+            if (template == null) {
+                throw new CallSequence.BuilderException("No call set for the items.", null);
+            }
+
+            return new ForEach(this);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single execution of a {@link ForEach}, holding the state that belongs to one request.
+ * <p/>
+ * The calls are started in the order of the items, keeping at most the maximum number of them in progress; each
+ * completed call frees up room for the next one. Like the handlers of a unit, the calls report on the event loop of the
+ * sequence, so the counts need no synchronization.
+ */
+final class ForEachExecution implements OrchestrationHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(ForEachExecution.class);
+
+    private final ForEach forEach;
+
+    private OrchestrationContext context;
+
+    private ResponseListener responseListener;
+
+    private List<Object> items;
+
+    private List<Object> results;
+
+    // The forks of the calls in progress.
+    private OrchestrationContext[] forks;
+
+    private BitSet completed;
+
+    private int next = 0;
+
+    private int inProgress = 0;
+
+    private int outstanding;
+
+    private boolean isStarting = false;
+
+    private boolean isCompleted = false;
+
+    private ExecutionTrace.UnitTiming unitTiming;
+
+    private ExecutionTrace.HandlerTiming[] handlerTimings;
+
+    ForEachExecution(final ForEach forEach) {
+        this.forEach = forEach;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final OrchestrationContext context, final ResponseListener responseListener) {
+        this.context = context;
+        this.responseListener = responseListener;
+
+        // Take a snapshot of the items, so that changes to the collection don't affect the execution.
+        final Object value = context.getContextVar(forEach.getItemsVar());
+        items = new ArrayList<>();
+        if (value instanceof Iterable) {
+            for (Object item : (Iterable<?>) value) {
+                items.add(item);
+            }
+        } else if (value != null) {
+            isCompleted = true;
+            responseListener.onError("Context var '" + forEach.getItemsVar() + "' doesn't hold a collection of items.");
+            return;
+        }
+
+        forks = new OrchestrationContext[items.size()];
+        completed = new BitSet(items.size());
+        outstanding = items.size();
+        if (forEach.getResultsVar() != null) {
+            results = new ArrayList<>(Arrays.asList(new Object[items.size()]));
+            context.setContextVar(forEach.getResultsVar(), results);
+        }
+
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            unitTiming = trace.startUnit("for-each");
+            handlerTimings = new ExecutionTrace.HandlerTiming[items.size()];
+        }
+
+        if (outstanding == 0) {
+            LOG.trace("No items in context var '{}', nothing to call.", forEach.getItemsVar());
+            complete();
+            return;
+        }
+        startCalls();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCompleted() {
+        return isCompleted;
+    }
+
+    private void startCalls() {
+        if (isStarting) {
+            // A call completed right away; the loop below picks up the room it freed.
+            return;
+        }
+
+        isStarting = true;
+        while (!isCompleted && !context.isCancelled() && next < forks.length
+                && inProgress < forEach.getMaxConcurrency()) {
+            final int index = next++;
+            inProgress++;
+            forks[index] = context.fork();
+            forks[index].setContextVar(forEach.getItemVar(), items.get(index));
+            final CallHandler handler = forEach.newHandler();
+            if (unitTiming != null) {
+                handlerTimings[index] = unitTiming.startHandler(handler);
+            }
+            handler.execute(forks[index], new ItemListener(index));
+        }
+        isStarting = false;
+    }
+
+    private boolean report(final int index) {
+        if (isCompleted) {
+            return false;
+        }
+        if (completed.get(index)) {
+            LOG.warn("Call for item {} reported more than once, ignoring.", index);
+            return false;
+        }
+        completed.set(index);
+        inProgress--;
+        if (unitTiming != null) {
+            handlerTimings[index].complete();
+        }
+        return true;
+    }
+
+    private void onCompleted(final int index) {
+        if (!report(index)) {
+            return;
+        }
+        if (results != null) {
+            results.set(index, forks[index].getContextVar(forEach.getResultVar()));
+        }
+        // The fork isn't merged, so unregister it by hand rather than have the context hold on to it until the end.
+        context.removeCancellable(forks[index]);
+        forks[index] = null;
+
+        if (--outstanding == 0) {
+            complete();
+            return;
+        }
+        startCalls();
+    }
+
+    private void onError(final int index, final ResponseListener.ErrorType type, final String errorMessage) {
+        if (!report(index)) {
+            return;
+        }
+        context.removeCancellable(forks[index]);
+        forks[index] = null;
+
+        // Without the result for this item the for-each can't complete, so stop the other calls.
+        isCompleted = true;
+        for (OrchestrationContext fork : forks) {
+            if (fork != null) {
+                fork.cancel();
+            }
+        }
+        if (type != null) {
+            responseListener.onError(type, errorMessage);
+        } else {
+            responseListener.onError(errorMessage);
+        }
+    }
+
+    private void complete() {
+        isCompleted = true;
+        if (unitTiming != null) {
+            unitTiming.complete();
+        }
+        // The changes the calls made to their forks are discarded, so there's nothing to merge.
+        responseListener.onCompleted(context.getContextVars());
+    }
+
+    /**
+     * Listener handed to the handler of the call for a single item, so that its reports can be attributed to it.
+     */
+    private final class ItemListener implements ResponseListener {
+        private final int index;
+
+        private ItemListener(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onCompleted(final Map<String, Object> vars) {
+            ForEachExecution.this.onCompleted(index);
+        }
+
+        @Override
+        public void onError(final String errorMessage) {
+            ForEachExecution.this.onError(index, null, errorMessage);
+        }
+
+        @Override
+        public void onError(final ErrorType type, final String errorMessage) {
+            ForEachExecution.this.onError(index, type, errorMessage);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single execution of a {@link CallGraph}, holding the state that belongs to one request.
+ * <p/>
+ * Each call keeps a count of the calls it still waits for; when a call completes, the counts of the calls depending on
+ * it are decreased, and those that drop to zero are started. Like the handlers of a unit, the calls report on the event
+ * loop of the sequence, so the counts need no synchronization.
+ */
+final class GraphExecution implements OrchestrationHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(GraphExecution.class);
+
+    private final CallGraph graph;
+
+    private final int[] pending;
+
+    private final BitSet completed;
+
+    private int outstanding;
+
+    private OrchestrationContext context;
+
+    private ResponseListener responseListener;
+
+    private boolean isCompleted = false;
+
+    private ExecutionTrace.UnitTiming unitTiming;
+
+    private ExecutionTrace.HandlerTiming[] handlerTimings;
+
+    // For each started call, the call whose completion started it.
+    private int[] startedBy;
+
+    GraphExecution(final CallGraph graph) {
+        this.graph = graph;
+        pending = graph.getDependencyCounts();
+        completed = new BitSet(pending.length);
+        outstanding = pending.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final OrchestrationContext context, final ResponseListener responseListener) {
+        this.context = context;
+        this.responseListener = responseListener;
+
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            unitTiming = trace.startUnit("graph");
+            handlerTimings = new ExecutionTrace.HandlerTiming[pending.length];
+            startedBy = new int[pending.length];
+        }
+
+        // Find the calls without dependencies before starting any of them; a call that completes right away already
+        // starts the calls depending on it, which the scan would otherwise start again.
+        final int[] roots = new int[pending.length];
+        int rootCount = 0;
+        for (int i = 0; i < pending.length; i++) {
+            if (pending[i] == 0) {
+                roots[rootCount++] = i;
+            }
+        }
+        for (int i = 0; i < rootCount; i++) {
+            start(roots[i], -1);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCompleted() {
+        return isCompleted;
+    }
+
+    private void start(final int node, final int trigger) {
+        if (isCompleted || context.isCancelled()) {
+            return;
+        }
+        final OrchestrationHandler handler = graph.newHandler(node);
+        if (unitTiming != null) {
+            handlerTimings[node] = unitTiming.startHandler(handler);
+            startedBy[node] = trigger;
+        }
+        handler.execute(context, new NodeListener(node));
+    }
+
+    private void onCompleted(final int node, final Map<String, Object> vars) {
+        if (isCompleted) {
+            return;
+        }
+        if (completed.get(node)) {
+            LOG.warn("Call {} in graph reported completion more than once, ignoring.", node);
+            return;
+        }
+        completed.set(node);
+        if (unitTiming != null) {
+            handlerTimings[node].complete();
+        }
+
+        if (--outstanding == 0) {
+            isCompleted = true;
+            if (unitTiming != null) {
+                unitTiming.complete(getCriticalPath(node));
+            }
+            responseListener.onCompleted(vars);
+            return;
+        }
+
+        // Start the calls for which this was the last one they were waiting for.
+        for (int dependent : graph.getDependents(node)) {
+            if (--pending[dependent] == 0) {
+                start(dependent, node);
+            }
+        }
+    }
+
+    private List<ExecutionTrace.HandlerTiming> getCriticalPath(final int last) {
+        // Follow the calls that started each other back from the call that completed last.
+        final List<ExecutionTrace.HandlerTiming> path = new ArrayList<>();
+        for (int node = last; node >= 0; node = startedBy[node]) {
+            path.add(handlerTimings[node]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private void onError(final int node) {
+        if (unitTiming != null) {
+            handlerTimings[node].complete();
+        }
+        isCompleted = true;
+    }
+
+    /**
+     * Listener handed to the handler of a single call, so that its reports can be attributed to it.
+     */
+    private final class NodeListener implements ResponseListener {
+        private final int node;
+
+        private NodeListener(final int node) {
+            this.node = node;
+        }
+
+        @Override
+        public void onCompleted(final Map<String, Object> vars) {
+            GraphExecution.this.onCompleted(node, vars);
+        }
+
+        @Override
+        public void onError(final String errorMessage) {
+            if (!isCompleted) {
+                GraphExecution.this.onError(node);
+                responseListener.onError(errorMessage);
+            }
+        }
+
+        @Override
+        public void onError(final ErrorType type, final String errorMessage) {
+            if (!isCompleted) {
+                GraphExecution.this.onError(node);
+                responseListener.onError(type, errorMessage);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.AbstractDecisionHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+
+/**
+ * Recipe for creating a fresh handler instance for every execution of a unit.
+ *
+ * @param <T> The type of the handler.
+ */
+class HandlerTemplate<T extends OrchestrationHandler> {
+    private final HandlerFactory<? extends T> factory;
+
+    HandlerTemplate(final HandlerFactory<? extends T> factory) {
+        this.factory = factory;
+    }
+
+    T newHandler() {
+        return factory.newHandler();
+    }
+
+    /**
+     * Template for decision handlers, which also hands the conditional paths to each new instance.
+     */
+    static final class Decision extends HandlerTemplate<AbstractDecisionHandler> {
+        private final ExecutionUnit<?> whenTrue;
+
+        private final ExecutionUnit<?> whenFalse;
+
+        private final ExecutionUnit<?> inputs;
+
+        Decision(final HandlerFactory<? extends AbstractDecisionHandler> factory,
+                 final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse) {
+            this(factory, null, whenTrue, whenFalse);
+        }
+
+        Decision(final HandlerFactory<? extends AbstractDecisionHandler> factory, final ExecutionUnit<?> inputs,
+                 final ExecutionUnit<?> whenTrue, final ExecutionUnit<?> whenFalse) {
+            super(factory);
+            this.inputs = inputs;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        AbstractDecisionHandler newHandler() {
+            AbstractDecisionHandler decision = super.newHandler();
+            decision.setWhenTrue(whenTrue);
+            if (whenFalse != null) {
+                decision.setWhenFalse(whenFalse);
+            }
+            if (inputs != null) {
+                decision.setInputs(inputs);
+            }
+            return decision;
+        }
+    }
+}
@@ -55,6 +55,7 @@ public interface ResponseListener {
         NOT_ALLOWED,
         TIMEOUT,
         CONFLICT,
-        REQUEST_ENTITY_TOO_LARGE
+        REQUEST_ENTITY_TOO_LARGE,
+        SERVICE_UNAVAILABLE
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallHandler;
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single execution of a scatter-gather unit, holding the state that belongs to one request.
+ * <p/>
+ * The same request is sent to all calls at once, each with its own fork of the context; as soon as a quorum of them
+ * has completed, their forks are merged (in the order in which they completed) and the calls still in progress are
+ * cancelled. Failed calls are tolerated as long as the quorum can still be reached. Like the handlers of a unit, the
+ * calls report on the event loop of the sequence, so the counts need no synchronization.
+ */
+final class ScatterGather implements OrchestrationHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(ScatterGather.class);
+
+    private final List<HandlerFactory<? extends CallHandler>> calls;
+
+    private final int quorum;
+
+    private final MergePolicy mergePolicy;
+
+    private final OrchestrationContext[] forks;
+
+    private final BitSet reported;
+
+    // The forks of the completed calls, in the order in which they completed.
+    private final List<OrchestrationContext> gathered;
+
+    private int failures = 0;
+
+    private OrchestrationContext context;
+
+    private ResponseListener responseListener;
+
+    private boolean isCompleted = false;
+
+    private ExecutionTrace.UnitTiming unitTiming;
+
+    private ExecutionTrace.HandlerTiming[] handlerTimings;
+
+    ScatterGather(final List<HandlerFactory<? extends CallHandler>> calls, final int quorum,
+                  final MergePolicy mergePolicy) {
+        this.calls = calls;
+        this.quorum = quorum;
+        this.mergePolicy = mergePolicy;
+        forks = new OrchestrationContext[calls.size()];
+        reported = new BitSet(forks.length);
+        gathered = new ArrayList<>(quorum);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final OrchestrationContext context, final ResponseListener responseListener) {
+        this.context = context;
+        this.responseListener = responseListener;
+
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            unitTiming = trace.startUnit("scatter-gather");
+            handlerTimings = new ExecutionTrace.HandlerTiming[forks.length];
+        }
+
+        // Fork all contexts before starting any call, so that none of the calls sees the changes of another.
+        for (int i = 0; i < forks.length; i++) {
+            forks[i] = context.fork();
+        }
+        for (int i = 0; i < forks.length && !isCompleted && !context.isCancelled(); i++) {
+            final CallHandler handler = calls.get(i).newHandler();
+            if (unitTiming != null) {
+                handlerTimings[i] = unitTiming.startHandler(handler);
+            }
+            handler.execute(forks[i], new CallListener(i));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCompleted() {
+        return isCompleted;
+    }
+
+    private boolean report(final int call) {
+        if (isCompleted) {
+            return false;
+        }
+        if (reported.get(call)) {
+            LOG.warn("Call {} in scatter-gather reported more than once, ignoring.", call);
+            return false;
+        }
+        reported.set(call);
+        if (unitTiming != null) {
+            handlerTimings[call].complete();
+        }
+        return true;
+    }
+
+    private void onCompleted(final int call) {
+        if (!report(call)) {
+            return;
+        }
+        gathered.add(forks[call]);
+        if (gathered.size() < quorum) {
+            LOG.trace("Call {} in scatter-gather completed, waiting for {} more.", call, quorum - gathered.size());
+            return;
+        }
+
+        // Quorum reached; the calls still in progress aren't needed anymore.
+        isCompleted = true;
+        cancelOutstanding();
+        final Map<String, Object> result;
+        try {
+            result = context.merge(gathered, mergePolicy);
+        } catch (IllegalStateException ex) {
+            LOG.warn("Problem merging the results of the calls: {}", ex.getMessage());
+            responseListener.onError(ex.getMessage());
+            return;
+        }
+        if (unitTiming != null) {
+            unitTiming.complete();
+        }
+        responseListener.onCompleted(result);
+    }
+
+    private void onError(final int call, final ResponseListener.ErrorType type, final String errorMessage) {
+        if (!report(call)) {
+            return;
+        }
+        if (++failures <= forks.length - quorum) {
+            LOG.debug("Call {} in scatter-gather failed ({}), quorum can still be reached.", call, errorMessage);
+            // The changes of a failed call are never merged, so let go of its fork.
+            context.removeCancellable(forks[call]);
+            return;
+        }
+
+        // Too many failures to reach the quorum.
+        isCompleted = true;
+        cancelOutstanding();
+        if (type != null) {
+            responseListener.onError(type, errorMessage);
+        } else {
+            responseListener.onError(errorMessage);
+        }
+    }
+
+    private void cancelOutstanding() {
+        for (int i = 0; i < forks.length; i++) {
+            if (!reported.get(i) && forks[i] != null) {
+                forks[i].cancel();
+            }
+        }
+    }
+
+    /**
+     * Listener handed to the handler of a single call, so that its reports can be attributed to it.
+     */
+    private final class CallListener implements ResponseListener {
+        private final int call;
+
+        private CallListener(final int call) {
+            this.call = call;
+        }
+
+        @Override
+        public void onCompleted(final Map<String, Object> vars) {
+            ScatterGather.this.onCompleted(call);
+        }
+
+        @Override
+        public void onError(final String errorMessage) {
+            ScatterGather.this.onError(call, null, errorMessage);
+        }
+
+        @Override
+        public void onError(final ErrorType type, final String errorMessage) {
+            ScatterGather.this.onError(call, type, errorMessage);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single execution of an {@link ExecutionUnit}, holding the state that belongs to one request.
+ * <p/>
+ * Handlers are started in the order in which they were added to the unit. Completion is tracked with a countdown of
+ * the outstanding handlers, plus a bit per handler to ignore repeated reports, so that each report is handled in
+ * constant time regardless of the width of the unit. Handlers report on the event loop of the sequence (handlers that
+ * process their result on a worker thread hand their report back to it), so the countdown needs no synchronization.
+ */
+final class UnitExecution {
+    private static final Logger LOG = LoggerFactory.getLogger(UnitExecution.class);
+
+    private final ExecutionUnit<?> unit;
+
+    private final OrchestrationContext context;
+
+    private final ResponseListener responseListener;
+
+    private final OrchestrationHandler[] handlers;
+
+    private final OrchestrationContext[] forks;
+
+    private final BitSet completed;
+
+    private int outstanding;
+
+    private ExecutionTrace.UnitTiming unitTiming;
+
+    private ExecutionTrace.HandlerTiming[] handlerTimings;
+
+    UnitExecution(final ExecutionUnit<?> unit, final OrchestrationContext context,
+                  final ResponseListener responseListener) {
+        this.unit = unit;
+        this.context = context;
+        this.responseListener = responseListener;
+
+        final List<? extends HandlerTemplate<?>> templates = unit.getHandlers();
+        handlers = new OrchestrationHandler[templates.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = templates.get(i).newHandler();
+        }
+        completed = new BitSet(handlers.length);
+        outstanding = handlers.length;
+
+        if (unit.getMergePolicy() != null) {
+            forks = new OrchestrationContext[handlers.length];
+            for (int i = 0; i < forks.length; i++) {
+                forks[i] = context.fork();
+            }
+        } else {
+            forks = null;
+        }
+    }
+
+    void start() {
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            unitTiming = trace.startUnit(getName());
+            handlerTimings = new ExecutionTrace.HandlerTiming[handlers.length];
+        }
+
+        for (int i = 0; i < handlers.length && !context.isCancelled(); i++) {
+            if (unitTiming != null) {
+                handlerTimings[i] = unitTiming.startHandler(handlers[i]);
+            }
+            handlers[i].execute(forks != null ? forks[i] : context, new HandlerListener(i));
+        }
+    }
+
+    private void onCompleted(final int index, final Map<String, Object> vars) {
+        if (completed.get(index)) {
+            LOG.warn("Handler {} reported completion more than once, ignoring.", handlers[index].getClass().getName());
+            return;
+        }
+        completed.set(index);
+        if (unitTiming != null) {
+            handlerTimings[index].complete();
+        }
+
+        if (--outstanding > 0) {
+            // At least one handler is not ready yet, so don't proceed.
+            LOG.trace("Method onCompleted() called, but waiting for {} other handler(s) in the group to complete.",
+                    outstanding);
+            return;
+        }
+
+        Map<String, Object> result = vars;
+        if (forks != null) {
+            // Bring the changes made by the handlers together.
+            final MergePolicy policy = unit.getMergePolicy();
+            try {
+                result = context.merge(Arrays.asList(forks), policy);
+            } catch (IllegalStateException ex) {
+                LOG.warn("Problem merging the results of the handlers: {}", ex.getMessage());
+                responseListener.onError(ex.getMessage());
+                return;
+            }
+        }
+
+        if (unitTiming != null) {
+            unitTiming.complete();
+        }
+
+        // All handlers onCompleted; move to the next unit.
+        final ExecutionUnit<?> next = unit.getNext();
+        if (next != null) {
+            next.execute(context, responseListener);
+            return;
+        }
+
+        // End of the line; report to the caller.
+        responseListener.onCompleted(result);
+    }
+
+    private String getName() {
+        final StringBuilder name = new StringBuilder();
+        for (OrchestrationHandler handler : handlers) {
+            if (name.length() > 0) {
+                name.append(" + ");
+            }
+            name.append(handler.getClass().getSimpleName());
+        }
+        return name.toString();
+    }
+
+    private void traceError(final int index) {
+        if (unitTiming != null) {
+            handlerTimings[index].complete();
+        }
+    }
+
+    /**
+     * Listener handed to a single handler, so that its reports can be attributed to it.
+     */
+    private final class HandlerListener implements ResponseListener {
+        private final int index;
+
+        private HandlerListener(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onCompleted(final Map<String, Object> vars) {
+            UnitExecution.this.onCompleted(index, vars);
+        }
+
+        @Override
+        public void onError(final String errorMessage) {
+            traceError(index);
+            responseListener.onError(errorMessage);
+        }
+
+        @Override
+        public void onError(final ErrorType type, final String errorMessage) {
+            traceError(index);
+            responseListener.onError(type, errorMessage);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+/**
+ * Base class for handlers that make calls over the event bus and expect an answer, where the calls to the same
+ * destination made by concurrent orchestrations are sent together in batches.
+ * <p/>
+ * Instead of a single call message, the verticle receives a JSON array with the call messages of all calls in the batch.
+ * It should reply (as usual) with status <code>ok</code> and a <code>result</code> array that holds a reply for each of
+ * the calls, in the same order; each of these replies in turn has a status and a result, just like the reply to a
+ * single call. They are handed to the <code>processResult()</code> methods of the respective handlers. An error reply
+ * to the batch as a whole is handed to all of them.
+ * <p/>
+ * Batching trades a bounded amount of latency (the batch window) for fewer, larger messages, which pays off for
+ * destinations that handle batches much more efficiently than single calls (e.g. database verticles). The batch window
+ * and size are taken from the first handler calling the destination; use the same settings for all handlers of a
+ * destination. Batched calls aren't hedged.
+ */
+public abstract class AbstractBatchingCallHandler extends AbstractReturningCallHandler {
+    /**
+     * Override to change the time calls are collected before a batch is sent.
+     *
+     * @return The batch window (in millisecs).
+     */
+    protected long getBatchWindow() {
+        return 10;
+    }
+
+    /**
+     * Override to change the maximum number of calls in a batch; a full batch is sent right away.
+     *
+     * @return The maximum number of calls in a batch.
+     */
+    protected int getMaxBatchSize() {
+        return 100;
+    }
+
+    @Override
+    final CallBatcher getBatcher(final OrchestrationContext context) {
+        return context.getPolicies().getBatcher(getDestination(), getBatchWindow(), getMaxBatchSize());
+    }
+}
@@ -18,10 +18,16 @@ package nl.dechateau.vertx.orchestration.handler;
 import nl.dechateau.vertx.orchestration.ResponseListener;
 import nl.dechateau.vertx.orchestration.ExecutionUnit;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Base class for handlers that identify conditional paths within the call sequence.
+ * <p/>
+ * When the decision is given inputs, it is made speculatively: the inputs and both paths are started at once, each path
+ * with its own fork of the context. As soon as the inputs are available the decision is made; the changes of the chosen
+ * path are merged into the context, and the other path is cancelled. This trades calls to the backends for latency, so
+ * the paths should only consist of calls that don't change anything, and shouldn't depend on the inputs.
  */
 public abstract class AbstractDecisionHandler implements OrchestrationHandler, ResponseListener {
     private OrchestrationContext context;
@@ -30,8 +36,16 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
 
     private ExecutionUnit<?> whenFalse;
 
+    private ExecutionUnit<?> inputs;
+
     private ResponseListener responseListener;
 
+    private Branch trueBranch;
+
+    private Branch falseBranch;
+
+    private Branch chosen;
+
     private boolean isCompleted = false;
 
     public final void setWhenTrue(final ExecutionUnit<?> whenTrue) {
@@ -42,6 +56,10 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
         this.whenFalse = whenFalse;
     }
 
+    public final void setInputs(final ExecutionUnit<?> inputs) {
+        this.inputs = inputs;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -54,7 +72,47 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
         this.context = context;
         this.responseListener = responseListener;
 
-        if (makeDecision()) {
+        if (inputs != null) {
+            speculate();
+            return;
+        }
+
+        decide();
+    }
+
+    /**
+     * Make the decision, and report it through {@link #choose(boolean)}. Hook for decisions that can't be made right
+     * away.
+     */
+    void decide() {
+        choose(makeDecision());
+    }
+
+    final OrchestrationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Proceed with the path for the decision that was made.
+     *
+     * @param decision The decision.
+     */
+    final void choose(final boolean decision) {
+        if (isCompleted) {
+            return;
+        }
+
+        if (trueBranch != null) {
+            // Both paths are underway; keep the chosen one, and drop the other one.
+            chosen = decision ? trueBranch : falseBranch;
+            (decision ? falseBranch : trueBranch).fork.cancel();
+            if (chosen.isReported) {
+                chosen.commit();
+            }
+            return;
+        }
+
+        if (decision) {
             // Start whenTrue sequence.
             whenTrue.execute(context, this);
         } else {
@@ -68,6 +126,44 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
         }
     }
 
+    private void speculate() {
+        if (whenFalse == null) {
+            throw new IllegalStateException("A speculative decision needs a call sequence for 'when false'.");
+        }
+
+        trueBranch = new Branch(context.fork());
+        falseBranch = new Branch(context.fork());
+        whenTrue.execute(trueBranch.fork, trueBranch);
+        whenFalse.execute(falseBranch.fork, falseBranch);
+
+        inputs.execute(context, new ResponseListener() {
+            @Override
+            public void onCompleted(final Map<String, Object> vars) {
+                if (!isCompleted) {
+                    decide();
+                }
+            }
+
+            @Override
+            public void onError(final String errorMessage) {
+                if (!isCompleted) {
+                    trueBranch.fork.cancel();
+                    falseBranch.fork.cancel();
+                    AbstractDecisionHandler.this.onError(errorMessage);
+                }
+            }
+
+            @Override
+            public void onError(final ErrorType type, final String errorMessage) {
+                if (!isCompleted) {
+                    trueBranch.fork.cancel();
+                    falseBranch.fork.cancel();
+                    AbstractDecisionHandler.this.onError(type, errorMessage);
+                }
+            }
+        });
+    }
+
     /**
      * Make the decision (based on the values of the appropriate context variables).
      *
@@ -88,6 +184,62 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
         return context.getContextVar(key);
     }
 
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>null</code> if it isn't set.
+     */
+    protected final <T> T getContextVar(final ContextKey<T> key) {
+        if (context == null) {
+            return null;
+        }
+
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final int getContextVar(final IntContextKey key) {
+        if (context == null) {
+            return 0;
+        }
+
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final long getContextVar(final LongContextKey key) {
+        if (context == null) {
+            return 0;
+        }
+
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final double getContextVar(final DoubleContextKey key) {
+        if (context == null) {
+            return 0;
+        }
+
+        return context.getContextVar(key);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -135,4 +287,67 @@ public abstract class AbstractDecisionHandler implements OrchestrationHandler, R
         isCompleted = true;
         responseListener.onError(type, errorMessage);
     }
+
+    /**
+     * Path started before the decision was made; its outcome is held until it's known whether the path was chosen.
+     */
+    private final class Branch implements ResponseListener {
+        private final OrchestrationContext fork;
+
+        private boolean isReported = false;
+
+        private boolean isFailed = false;
+
+        private ErrorType errorType;
+
+        private String errorMessage;
+
+        private Branch(final OrchestrationContext fork) {
+            this.fork = fork;
+        }
+
+        @Override
+        public void onCompleted(final Map<String, Object> vars) {
+            report(false, null, null);
+        }
+
+        @Override
+        public void onError(final String errorMessage) {
+            report(true, null, errorMessage);
+        }
+
+        @Override
+        public void onError(final ErrorType type, final String errorMessage) {
+            report(true, type, errorMessage);
+        }
+
+        private void report(final boolean isFailed, final ErrorType type, final String errorMessage) {
+            if (isReported) {
+                return;
+            }
+            isReported = true;
+            this.isFailed = isFailed;
+            this.errorType = type;
+            this.errorMessage = errorMessage;
+
+            if (chosen == this) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            if (isCompleted) {
+                return;
+            }
+
+            if (!isFailed) {
+                AbstractDecisionHandler.this.onCompleted(
+                        context.merge(Collections.singletonList(fork), MergePolicy.LAST_WRITE_WINS));
+            } else if (errorType != null) {
+                AbstractDecisionHandler.this.onError(errorType, errorMessage);
+            } else {
+                AbstractDecisionHandler.this.onError(errorMessage);
+            }
+        }
+    }
 }
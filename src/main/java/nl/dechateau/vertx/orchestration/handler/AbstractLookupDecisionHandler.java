@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Base class for decisions that are based on the reply to a call over the event bus.
+ * <p/>
+ * The call and the decision are made within the same unit, instead of in a unit of their own preceding the decision.
+ * The call is made like any other returning call, so the policies for its destination (such as caching its replies)
+ * apply to it as well.
+ */
+public abstract class AbstractLookupDecisionHandler extends AbstractDecisionHandler {
+    private boolean decision;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    final void decide() {
+        new Lookup().execute(getContext(), new ResponseListener() {
+            @Override
+            public void onCompleted(final Map<String, Object> vars) {
+                choose(decision);
+            }
+
+            @Override
+            public void onError(final String errorMessage) {
+                AbstractLookupDecisionHandler.this.onError(errorMessage);
+            }
+
+            @Override
+            public void onError(final ErrorType type, final String errorMessage) {
+                AbstractLookupDecisionHandler.this.onError(type, errorMessage);
+            }
+        });
+    }
+
+    /**
+     * @return The location of the verticle to which the call is to be made.
+     */
+    protected abstract String getDestination();
+
+    /**
+     * @return The JSON message containing the verticle call parameters.
+     */
+    protected abstract JsonObject getCallMessage();
+
+    /**
+     * Override to limit the time the call may take; when no reply was received in time, the sequence fails with a
+     * {@link ResponseListener.ErrorType#TIMEOUT}.
+     *
+     * @return The timeout (in millisecs) for the call, or <code>0</code> to only be bound by the sequence's timeout.
+     */
+    protected long getTimeout() {
+        return 0;
+    }
+
+    /**
+     * Make the decision, based on the result of the call (and the values of the appropriate context variables).
+     *
+     * @param result The JSON result object, or <code>null</code> when the reply held no result.
+     * @return Whether the decision was <code>true</code> or <code>false</code>.
+     */
+    protected abstract boolean makeDecision(final JsonObject result);
+
+    /**
+     * Override to make the decision when the call replies with an array instead of an object. Without it, such a reply
+     * fails the decision, rather than have it silently come out <code>false</code>.
+     *
+     * @param result The JSON result array.
+     * @return Whether the decision was <code>true</code> or <code>false</code>.
+     */
+    protected boolean makeDecision(final JsonArray result) {
+        throw new UnsupportedOperationException("Reply from " + getDestination()
+                + " holds an array, but the decision handler doesn't override makeDecision(JsonArray).");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final boolean makeDecision() {
+        return decision;
+    }
+
+    /**
+     * The call providing the result on which the decision is based.
+     */
+    private final class Lookup extends AbstractReturningCallHandler {
+        @Override
+        protected String getDestination() {
+            return AbstractLookupDecisionHandler.this.getDestination();
+        }
+
+        @Override
+        protected JsonObject getCallMessage() {
+            return AbstractLookupDecisionHandler.this.getCallMessage();
+        }
+
+        @Override
+        protected long getTimeout() {
+            return AbstractLookupDecisionHandler.this.getTimeout();
+        }
+
+        @Override
+        protected void processResult(final JsonObject result) {
+            decision = makeDecision(result);
+        }
+
+        @Override
+        protected void processResult(final JsonArray result) {
+            decision = makeDecision(result);
+        }
+
+        @Override
+        protected void processEmptyResult() {
+            decision = makeDecision((JsonObject) null);
+        }
+    }
+}
@@ -37,8 +37,21 @@ public abstract class AbstractOneWayCallHandler implements CallHandler {
     public final void execute(final OrchestrationContext context, final ResponseListener responseListener) {
         this.context = context;
 
+        final long remainingTime = context.getRemainingTime();
+        if (remainingTime <= 0) {
+            // No use in making a call whose effect is too late anyway.
+            isCompleted = true;
+            responseListener.onError(ResponseListener.ErrorType.TIMEOUT, "No time left for call to " + getDestination() + ".");
+            return;
+        }
+
         try {
-            context.getEventBus().send(getDestination(), getCallMessage());
+            JsonObject message = getCallMessage();
+            if (isDeadlinePropagated()) {
+                // Leave the handler's own message alone; it may be shared or cached.
+                message = message.copy().putNumber(TIME_BUDGET_FIELD, remainingTime);
+            }
+            context.getEventBus().send(getDestination(), message);
         } catch (Exception ex) {
             LOG.error("Problem constructing/sending message:", ex);
             isCompleted = true;
@@ -60,6 +73,16 @@ public abstract class AbstractOneWayCallHandler implements CallHandler {
      */
     protected abstract JsonObject getCallMessage();
 
+    /**
+     * Override to have the time left for the sequence added to the call message (as the {@link #TIME_BUDGET_FIELD}
+     * field), so that the called verticle can skip work that can't be finished in time anyway.
+     *
+     * @return Whether the remaining time is sent along with the call.
+     */
+    protected boolean isDeadlinePropagated() {
+        return false;
+    }
+
     /**
      * Convenience method for getting a parameter from the context.
      *
@@ -70,6 +93,46 @@ public abstract class AbstractOneWayCallHandler implements CallHandler {
         return context.getContextVar(key);
     }
 
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>null</code> if it isn't set.
+     */
+    protected final <T> T getContextVar(final ContextKey<T> key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final int getContextVar(final IntContextKey key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final long getContextVar(final LongContextKey key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final double getContextVar(final DoubleContextKey key) {
+        return context.getContextVar(key);
+    }
+
     /**
      * {@inheritDoc}
      */
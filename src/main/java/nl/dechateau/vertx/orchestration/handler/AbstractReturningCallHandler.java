@@ -19,16 +19,19 @@ import nl.dechateau.vertx.orchestration.ResponseListener;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonElement;
 import org.vertx.java.core.json.JsonObject;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Base class for handlers that make calls over the event bus and expect an answer.
  */
-public abstract class AbstractReturningCallHandler implements CallHandler, Handler<Message<JsonObject>> {
+public abstract class AbstractReturningCallHandler implements CallHandler, Cancellable, Handler<Message<JsonObject>> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractReturningCallHandler.class);
 
     private ResponseListener responseListener;
@@ -37,6 +40,62 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
 
     private boolean isCompleted = false;
 
+    private boolean isProcessing = false;
+
+    private boolean isRegistered = false;
+
+    private ReplyRelay relay;
+
+    private boolean hasTimer = false;
+
+    private long timer;
+
+    private HedgingPolicy hedgingPolicy;
+
+    private ReplyRelay hedgeRelay;
+
+    private boolean hasHedgeTimer = false;
+
+    private long hedgeTimer;
+
+    private ConcurrencyLimit hedgeLimit;
+
+    private boolean hasHedgePermit = false;
+
+    private ReplyCache replyCache;
+
+    private CallCoalescer coalescer;
+
+    private CallCoalescer.Flight flight;
+
+    private String callKey;
+
+    private CallBatcher batcher;
+
+    private OrchestrationMetrics metrics;
+
+    private CircuitBreaker breaker;
+
+    private boolean hasPermit = false;
+
+    private ConcurrencyLimit callLimit;
+
+    private boolean hasLimitPermit = false;
+
+    private long permittedAt;
+
+    private JsonObject message;
+
+    private RetryPolicy retryPolicy;
+
+    private int attempts = 0;
+
+    private boolean hasRetryTimer = false;
+
+    private long retryTimer;
+
+    private long callStartedAt;
+
     /**
      * {@inheritDoc}
      */
@@ -45,12 +104,139 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
         this.context = context;
         this.responseListener = responseListener;
 
+        final long remainingTime = context.getRemainingTime();
+        if (remainingTime <= 0) {
+            // No use in making a call whose answer can't be used anymore.
+            isCompleted = true;
+            responseListener.onError(ResponseListener.ErrorType.TIMEOUT, "No time left for call to " + getDestination() + ".");
+            return;
+        }
+
+        JsonObject cachedReply = null;
         try {
-            context.getEventBus().send(getDestination(), getCallMessage(), this);
+            message = getCallMessage();
+            replyCache = context.getPolicies().getReplyCache(getDestination());
+            coalescer = context.getPolicies().getCoalescer(getDestination());
+            if (replyCache != null || coalescer != null) {
+                // Key on the message as the handler constructed it, before any per-call fields are added.
+                callKey = message.encode();
+            }
+            if (replyCache != null) {
+                cachedReply = replyCache.get(callKey);
+            }
         } catch (Exception ex) {
             LOG.error("Problem constructing/sending message:", ex);
             isCompleted = true;
             responseListener.onError(ex.getMessage());
+            return;
+        }
+
+        if (cachedReply != null) {
+            LOG.trace("Reply for call to {} found in cache.", getDestination());
+            processReply(cachedReply, true);
+            return;
+        }
+
+        retryPolicy = getRetryPolicy();
+        if (retryPolicy != null) {
+            retryPolicy.onCall();
+        }
+        attempt();
+    }
+
+    /**
+     * Make an attempt at the call.
+     */
+    private void attempt() {
+        attempts++;
+        final long remainingTime = context.getRemainingTime();
+        if (remainingTime <= 0) {
+            isCompleted = true;
+            unregister();
+            responseListener.onError(ResponseListener.ErrorType.TIMEOUT, "No time left for call to " + getDestination() + ".");
+            return;
+        }
+
+        final long timeout = getTimeout();
+        if (timeout > 0) {
+            timer = context.getVertx().setTimer(Math.min(timeout, remainingTime), new Handler<Long>() {
+                @Override
+                public void handle(final Long timerId) {
+                    onTimeout();
+                }
+            });
+            hasTimer = true;
+        }
+
+        if (coalescer != null) {
+            flight = coalescer.join(callKey, this, context.getVertx().currentContext());
+            if (!flight.isLedBy(this)) {
+                LOG.trace("Identical call to {} already underway, waiting for its reply.", getDestination());
+                register();
+                return;
+            }
+        }
+
+        // Only the call that is actually sent involves the breaker and the limit; calls that joined it share its
+        // outcome.
+        breaker = context.getPolicies().getCircuitBreaker(getDestination());
+        if (breaker != null) {
+            if (!breaker.tryAcquire()) {
+                // Don't add to the load of a destination that is in trouble.
+                reject("Circuit for calls to " + getDestination() + " is open.");
+                return;
+            }
+            hasPermit = true;
+        }
+        callLimit = context.getPolicies().getCallLimit(getDestination());
+        if (callLimit != null) {
+            if (!callLimit.tryAcquire()) {
+                // Turn the call away rather than have it wait behind too many others.
+                reject("Too many calls to " + getDestination() + " in progress.");
+                return;
+            }
+            hasLimitPermit = true;
+        }
+        permittedAt = System.nanoTime();
+
+        try {
+            final JsonObject callMessage = withTimeBudget(message, remainingTime);
+            batcher = getBatcher(context);
+            // Count the call as started before sending it, as its reply may be handled before the send returns.
+            startCall();
+            relay = new ReplyRelay(this, getDestination(), flight, context.getPolicies().getMetrics());
+            if (batcher != null) {
+                register();
+                traceSend();
+                batcher.add(relay, callMessage, context.getVertx());
+                return;
+            }
+
+            hedgingPolicy = context.getPolicies().getHedgingPolicy(getDestination());
+            register();
+            traceSend();
+            context.getEventBus().send(getDestination(), callMessage, relay);
+            if (hedgingPolicy != null) {
+                scheduleHedge(message, remainingTime);
+            }
+        } catch (Exception ex) {
+            LOG.error("Problem constructing/sending message:", ex);
+            cancelTimer();
+            cancelHedgeTimer();
+            if (flight != null) {
+                flight.abandon();
+            }
+            releasePermits(Outcome.FAILED);
+            if (callStartedAt != 0) {
+                metrics.onCallFailed(getClass().getName(), getDestination(), null, System.nanoTime() - callStartedAt);
+                callStartedAt = 0;
+            }
+            if (retry(null, ex.getMessage())) {
+                return;
+            }
+            isCompleted = true;
+            unregister();
+            responseListener.onError(ex.getMessage());
         }
     }
 
@@ -64,6 +250,52 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
      */
     protected abstract JsonObject getCallMessage();
 
+    /**
+     * Override to limit the time this call may take; when no reply was received in time, the sequence fails with a
+     * {@link ResponseListener.ErrorType#TIMEOUT}. The limit never exceeds the time left for the entire sequence.
+     *
+     * @return The timeout (in millisecs) for this call, or <code>0</code> to only be bound by the sequence's timeout.
+     */
+    protected long getTimeout() {
+        return 0;
+    }
+
+    /**
+     * Override to have failed calls retried: error replies, timeouts (see {@link #getTimeout()}) and failures to send
+     * the call. Every attempt is subject to the policies for the destination. Return a shared instance, so that the
+     * ratio of retried calls is bounded across executions.
+     *
+     * @return The retry policy, or <code>null</code> to not retry failed calls.
+     */
+    protected RetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * Override to have the time left for the sequence added to the call message (as the {@link CallHandler#TIME_BUDGET_FIELD}
+     * field), so that the called verticle can skip work that can't be finished in time anyway.
+     *
+     * @return Whether the remaining time is sent along with the call.
+     */
+    protected boolean isDeadlinePropagated() {
+        return false;
+    }
+
+    /**
+     * Override to have the result processed on a worker thread instead of the event loop, when processing it takes a
+     * lot of time (e.g. when de-serializing large payloads); other orchestrations on the same event loop can proceed in
+     * the meantime. The orchestration resumes on its own event loop once the result is processed; when the reply isn't
+     * handled on a Vert.x context, there is no event loop to resume on, and the result is processed inline.
+     * <p/>
+     * Only the <code>processResult()</code> methods are called on the worker thread, so they should only access this
+     * handler and the context vars. The worker pool can be set with {@link CallPolicies#offloadTo(WorkerPool)}.
+     *
+     * @return Whether the result is processed on a worker thread.
+     */
+    protected boolean isProcessingOffloaded() {
+        return false;
+    }
+
     /**
      * Convenience method for getting a parameter from the context.
      *
@@ -74,43 +306,526 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
         return context.getContextVar(key);
     }
 
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>null</code> if it isn't set.
+     */
+    protected final <T> T getContextVar(final ContextKey<T> key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final int getContextVar(final IntContextKey key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final long getContextVar(final LongContextKey key) {
+        return context.getContextVar(key);
+    }
+
+    /**
+     * Convenience method for getting a typed parameter from the context.
+     *
+     * @param key The key of the parameter.
+     * @return The value of the context parameter, or <code>0</code> if it isn't set.
+     */
+    protected final double getContextVar(final DoubleContextKey key) {
+        return context.getContextVar(key);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final void handle(final Message<JsonObject> replyMessage) {
-        final JsonObject reply = replyMessage.body();
-        LOG.trace("Handle reply message from verticle call: {}", reply.encode());
-
-        if (StringUtils.equals(reply.getString("status"), "ok")) {
-            final JsonElement result = reply.getValue("result");
-
-            if (result != null) {
-                try {
-                    if (result.isArray()) {
-                        processResult((JsonArray) result);
-                    } else {
-                        processResult((JsonObject) result);
-                    }
-                } catch (Exception ex) {
-                    LOG.error("Problem processing received data:", ex);
-                    isCompleted = true;
-                    responseListener.onError(ex.getMessage());
-                    return;
-                }
+        receive(replyMessage.body());
+    }
+
+    /**
+     * Called with a copy of the reply to an identical call this handler was waiting for.
+     *
+     * @param reply The reply.
+     */
+    final void onSharedReply(final JsonObject reply) {
+        receive(reply);
+    }
+
+    /**
+     * Hook for {@link AbstractBatchingCallHandler}.
+     *
+     * @param context The orchestration context.
+     * @return The batcher to hand the call to, or <code>null</code> to send the call by itself.
+     */
+    CallBatcher getBatcher(final OrchestrationContext context) {
+        return null;
+    }
+
+    private void receive(final JsonObject reply) {
+        if (isCompleted) {
+            LOG.debug("Reply from {} arrived after the call was completed, ignoring.", getDestination());
+            if (metrics != null) {
+                metrics.onLateReply(getDestination());
+            }
+            return;
+        }
+        cancelTimer();
+        cancelHedgeTimer();
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            trace.onReply(this);
+        }
+
+        final boolean isOk = StringUtils.equals(reply.getString("status"), "ok");
+        releasePermits(isOk ? Outcome.OK : Outcome.FAILED);
+        if (callStartedAt != 0) {
+            final long latency = System.nanoTime() - callStartedAt;
+            callStartedAt = 0;
+            if (isOk) {
+                metrics.onCallCompleted(getClass().getName(), getDestination(), latency);
             } else {
-                processEmptyResult();
+                metrics.onCallFailed(getClass().getName(), getDestination(), null, latency);
             }
-        } else {
+        }
+        if (!isOk && retry(null, reply.getString("message"))) {
+            return;
+        }
+        if (isOk && replyCache != null) {
+            replyCache.put(callKey, reply);
+        }
+        processReply(reply, isOk);
+    }
+
+    /**
+     * Report the outcome of the call to the circuit breaker and the concurrency limit, if it was permitted by them.
+     *
+     * @param outcome The outcome of the call.
+     */
+    private void releasePermits(final Outcome outcome) {
+        final long latency = System.nanoTime() - permittedAt;
+        if (hasPermit) {
+            hasPermit = false;
+            if (outcome == Outcome.OK) {
+                breaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(latency));
+            } else if (outcome == Outcome.UNKNOWN) {
+                breaker.onRelease();
+            } else {
+                breaker.onFailure();
+            }
+        }
+        if (hasLimitPermit) {
+            hasLimitPermit = false;
+            if (outcome == Outcome.UNKNOWN) {
+                callLimit.release();
+            } else {
+                callLimit.release(latency, outcome == Outcome.TIMED_OUT);
+            }
+        }
+    }
+
+    private void startCall() {
+        metrics = context.getPolicies().getMetrics();
+        if (metrics != null) {
+            callStartedAt = System.nanoTime();
+            metrics.onCallStarted(getClass().getName(), getDestination());
+        }
+    }
+
+    private void traceSend() {
+        final ExecutionTrace trace = context.getTrace();
+        if (trace != null) {
+            trace.onSend(this);
+        }
+    }
+
+    private void processReply(final JsonObject reply, final boolean isOk) {
+        if (LOG.isTraceEnabled()) {
+            // Encoding a (large) reply is expensive, so only do it when it will actually be logged.
+            LOG.trace("Handle reply message from verticle call: {}", reply.encode());
+        }
+
+        if (!isOk) {
             isCompleted = true;
+            unregister();
             processErrorResult(reply.getString("message"));
             return;
         }
 
+        final JsonElement result = reply.getValue("result");
+        if (result == null) {
+            processEmptyResult();
+            complete(null);
+        } else if (isProcessingOffloaded()) {
+            offload(result);
+        } else {
+            complete(process(result));
+        }
+    }
+
+    private Exception process(final JsonElement result) {
+        try {
+            if (result.isArray()) {
+                processResult((JsonArray) result);
+            } else {
+                processResult((JsonObject) result);
+            }
+            return null;
+        } catch (Exception ex) {
+            return ex;
+        }
+    }
+
+    private void offload(final JsonElement result) {
+        final Context origin = context.getVertx().currentContext();
+        if (origin == null) {
+            // Without an event loop to resume on, completing from the worker would race the rest of the orchestration.
+            LOG.debug("No Vert.x context to resume on, processing the reply from {} inline.", getDestination());
+            complete(process(result));
+            return;
+        }
+
+        isProcessing = true;
+        context.getPolicies().getWorkerPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Exception failure = process(result);
+
+                // Resume the orchestration on the event loop it was running on.
+                origin.runOnContext(new Handler<Void>() {
+                    @Override
+                    public void handle(final Void event) {
+                        complete(failure);
+                    }
+                });
+            }
+        });
+    }
+
+    private void complete(final Exception failure) {
+        if (isCompleted) {
+            LOG.debug("Call to {} was cancelled while its result was processed.", getDestination());
+            return;
+        }
         isCompleted = true;
+        unregister();
+
+        if (failure != null) {
+            LOG.error("Problem processing received data:", failure);
+            responseListener.onError(failure.getMessage());
+            return;
+        }
         responseListener.onCompleted(context.getVars());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void cancel() {
+        if (isCompleted) {
+            return;
+        }
+
+        isCompleted = true;
+        if (isProcessing) {
+            // The reply is already in; the orchestration just won't hear about it.
+            return;
+        }
+
+        if (hasRetryTimer) {
+            // Between attempts, so there's no call to let go of.
+            context.getVertx().cancelTimer(retryTimer);
+            hasRetryTimer = false;
+            return;
+        }
+
+        // Let go of the handler; a late reply will only reach the relay.
+        cancelTimer();
+        cancelHedgeTimer();
+        if (callStartedAt != 0) {
+            metrics.onCallCancelled(getClass().getName(), getDestination());
+            callStartedAt = 0;
+        }
+        releasePermits(Outcome.UNKNOWN);
+        if (!releaseCall()) {
+            // Nobody needs the result anymore, so the verticle can stop working on it.
+            sendCancelMessage(relay.destination);
+            if (hedgeRelay != null) {
+                sendCancelMessage(hedgeRelay.destination);
+            }
+        }
+    }
+
+    /**
+     * Override to notify the called verticle when the orchestration no longer needs the result of the call (including
+     * the losing call when it was hedged). The message is sent to the same destination as the call itself, so the
+     * verticle must be able to tell it apart (e.g. through an <code>action</code> field).
+     *
+     * @return The JSON message to send when the call is cancelled, or <code>null</code> to not notify the verticle.
+     */
+    protected JsonObject getCancelMessage() {
+        return null;
+    }
+
+    private void onTimeout() {
+        hasTimer = false;
+        if (isCompleted) {
+            return;
+        }
+
+        // Let go of the handler; a late reply will only reach the relay.
+        cancelHedgeTimer();
+        releaseCall();
+        releasePermits(Outcome.TIMED_OUT);
+        if (callStartedAt != 0) {
+            metrics.onCallFailed(getClass().getName(), getDestination(), ResponseListener.ErrorType.TIMEOUT,
+                    System.nanoTime() - callStartedAt);
+            callStartedAt = 0;
+        }
+        if (retry(ResponseListener.ErrorType.TIMEOUT, "Timeout occurred calling " + getDestination() + ".")) {
+            return;
+        }
+        isCompleted = true;
+        unregister();
+        responseListener.onError(ResponseListener.ErrorType.TIMEOUT, "Timeout occurred calling " + getDestination() + ".");
+    }
+
+    /**
+     * Turn the call away without sending it. Calls that joined it are turned away as well.
+     *
+     * @param errorMessage The reason for turning the call away.
+     */
+    private void reject(final String errorMessage) {
+        cancelTimer();
+        releasePermits(Outcome.UNKNOWN);
+        if (flight != null) {
+            flight.land(new JsonObject().putString("status", "error").putString("message", errorMessage));
+        }
+        isCompleted = true;
+        unregister();
+        responseListener.onError(ResponseListener.ErrorType.SERVICE_UNAVAILABLE, errorMessage);
+    }
+
+    /**
+     * Schedule another attempt at the call, if the retry policy allows it.
+     *
+     * @param errorType    The type of the error, if any.
+     * @param errorMessage The message that accompanied the error.
+     * @return Whether the call will be retried.
+     */
+    private boolean retry(final ResponseListener.ErrorType errorType, final String errorMessage) {
+        if (retryPolicy == null || context.isCancelled()) {
+            return false;
+        }
+        final long backoff = retryPolicy.getBackoff(attempts, errorType, errorMessage, context.getRemainingTime());
+        if (backoff < 0) {
+            return false;
+        }
+
+        LOG.debug("Call to {} failed ({}), retrying in {} ms.", new Object[]{getDestination(), errorMessage, backoff});
+        // Make sure that replies to the failed attempt can't be taken for replies to the next one.
+        if (relay != null) {
+            relay.detach();
+            relay = null;
+        }
+        if (hedgeRelay != null) {
+            hedgeRelay.detach();
+            hedgeRelay = null;
+            releaseHedgePermit(-1);
+        }
+        flight = null;
+        batcher = null;
+        retryTimer = context.getVertx().setTimer(backoff, new Handler<Long>() {
+            @Override
+            public void handle(final Long timerId) {
+                hasRetryTimer = false;
+                if (!isCompleted) {
+                    attempt();
+                }
+            }
+        });
+        hasRetryTimer = true;
+        return true;
+    }
+
+    /**
+     * Register the call with the context, so that it is cancelled along with the orchestration.
+     */
+    private void register() {
+        if (!isRegistered) {
+            isRegistered = true;
+            context.addCancellable(this);
+        }
+    }
+
+    /**
+     * Unregister the call from the context once it is completed, so that the context doesn't hold on to it.
+     */
+    private void unregister() {
+        if (isRegistered) {
+            isRegistered = false;
+            context.removeCancellable(this);
+        }
+    }
+
+    private void cancelTimer() {
+        if (hasTimer) {
+            context.getVertx().cancelTimer(timer);
+            hasTimer = false;
+        }
+    }
+
+    /**
+     * Stop waiting for the reply to the call.
+     *
+     * @return Whether the verticle should be left alone, because others still await the reply (the call wasn't made by
+     * this handler, or other handlers joined it), or because the call was part of a batch.
+     */
+    private boolean releaseCall() {
+        if (flight != null && !flight.isLedBy(this)) {
+            flight.leave(this);
+            return true;
+        }
+
+        if (batcher != null) {
+            // Take the call out of the batch, unless other handlers joined it; once the batch is sent, only the relay
+            // gets the reply.
+            relay.detach();
+            if (flight == null || !flight.abandon()) {
+                batcher.remove(relay);
+            }
+            return true;
+        }
+
+        relay.detach();
+        if (hedgeRelay != null) {
+            hedgeRelay.detach();
+            releaseHedgePermit(-1);
+        }
+        return flight != null && flight.abandon();
+    }
+
+    private void scheduleHedge(final JsonObject message, final long remainingTime) {
+        final long delay = hedgingPolicy.onCall();
+        if (isCompleted || delay >= remainingTime) {
+            // Either the reply is already there, or a hedged call couldn't be answered in time anyway.
+            return;
+        }
+
+        hedgeTimer = context.getVertx().setTimer(delay, new Handler<Long>() {
+            @Override
+            public void handle(final Long timerId) {
+                hasHedgeTimer = false;
+                hedge(message);
+            }
+        });
+        hasHedgeTimer = true;
+    }
+
+    private void hedge(final JsonObject message) {
+        if (isCompleted || !hedgingPolicy.tryHedge()) {
+            return;
+        }
+
+        final String destination = hedgingPolicy.getDestination(getDestination());
+        // A hedged call adds to the load of its destination like any other call, so it counts towards its limit.
+        hedgeLimit = context.getPolicies().getCallLimit(destination);
+        if (hedgeLimit != null) {
+            if (!hedgeLimit.tryAcquire()) {
+                LOG.debug("Too many calls to {} in progress, not hedging the call to {}.", destination, getDestination());
+                return;
+            }
+            hasHedgePermit = true;
+        }
+
+        LOG.debug("No reply from {} yet, hedging the call to {}.", getDestination(), destination);
+        hedgeRelay = new ReplyRelay(this, destination, flight, metrics);
+        try {
+            context.getEventBus().send(destination, withTimeBudget(message, context.getRemainingTime()), hedgeRelay);
+        } catch (Exception ex) {
+            // The original call is still underway, so just carry on without the hedge.
+            LOG.warn("Problem sending hedged call to {}: {}.", destination, ex.getMessage());
+            hedgeRelay = null;
+            releaseHedgePermit(-1);
+        }
+    }
+
+    /**
+     * Report the end of the hedged call to the concurrency limit of its destination, if it was permitted by it.
+     *
+     * @param latency The time (in nanosecs) the hedged call took to be answered, or <code>-1</code> when it wasn't.
+     */
+    private void releaseHedgePermit(final long latency) {
+        if (hasHedgePermit) {
+            hasHedgePermit = false;
+            if (latency < 0) {
+                hedgeLimit.release();
+            } else {
+                hedgeLimit.release(latency, false);
+            }
+        }
+    }
+
+    /**
+     * Add the time left for the sequence to a copy of the call message, if it should be propagated; the message itself
+     * is left alone, as it is used for every send of the call.
+     *
+     * @param message       The call message.
+     * @param remainingTime The time (in millisecs) left for the sequence.
+     * @return The message to send.
+     */
+    private JsonObject withTimeBudget(final JsonObject message, final long remainingTime) {
+        if (!isDeadlinePropagated()) {
+            return message;
+        }
+        return message.copy().putNumber(TIME_BUDGET_FIELD, remainingTime);
+    }
+
+    private void cancelHedgeTimer() {
+        if (hasHedgeTimer) {
+            context.getVertx().cancelTimer(hedgeTimer);
+            hasHedgeTimer = false;
+        }
+    }
+
+    private void onReply(final ReplyRelay source, final Message<JsonObject> replyMessage) {
+        if (hedgingPolicy != null && !isCompleted) {
+            hedgingPolicy.onReply((System.nanoTime() - source.sentAt) / 1000000);
+
+            // The first reply wins; the other call (if any) is no longer needed.
+            releaseHedgePermit(source == hedgeRelay ? System.nanoTime() - source.sentAt : -1);
+            final ReplyRelay other = source == relay ? hedgeRelay : relay;
+            if (other != null) {
+                other.detach();
+                sendCancelMessage(other.destination);
+            }
+        }
+        handle(replyMessage);
+    }
+
+    private void sendCancelMessage(final String destination) {
+        final JsonObject cancelMessage = getCancelMessage();
+        if (cancelMessage != null) {
+            try {
+                context.getEventBus().send(destination, cancelMessage);
+            } catch (Exception ex) {
+                LOG.warn("Problem sending cancel message to {}: {}.", destination, ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Process the result of the verticle call:
      * <ul>
@@ -173,6 +888,46 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
         return context.setContextVar(key, value);
     }
 
+    /**
+     * Convenience method for setting a typed parameter in the context.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    protected final <T> T setContextVar(final ContextKey<T> key, final T value) {
+        return context.setContextVar(key, value);
+    }
+
+    /**
+     * Convenience method for setting a typed parameter in the context.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    protected final void setContextVar(final IntContextKey key, final int value) {
+        context.setContextVar(key, value);
+    }
+
+    /**
+     * Convenience method for setting a typed parameter in the context.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    protected final void setContextVar(final LongContextKey key, final long value) {
+        context.setContextVar(key, value);
+    }
+
+    /**
+     * Convenience method for setting a typed parameter in the context.
+     *
+     * @param key   The key of the parameter.
+     * @param value The value of the parameter.
+     */
+    protected final void setContextVar(final DoubleContextKey key, final double value) {
+        context.setContextVar(key, value);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -180,4 +935,79 @@ public abstract class AbstractReturningCallHandler implements CallHandler, Handl
     public final boolean isCompleted() {
         return isCompleted;
     }
+
+    /**
+     * Outcomes of a call, as far as the circuit breaker and the concurrency limit are concerned.
+     */
+    private enum Outcome {
+        OK,
+        FAILED,
+        TIMED_OUT,
+        UNKNOWN
+    }
+
+    /**
+     * Reply handler registered with the event bus on behalf of a call handler.
+     * <p/>
+     * The event bus keeps a reply handler registered until a reply arrives. Once the call handler no longer waits for
+     * the reply, detaching it releases the call handler (and with it the context of the sequence); only this relay
+     * lingers until the reply arrives. Each attempt has a relay of its own, so that a late reply to an earlier attempt
+     * can't be taken for the reply to the current one. Batched calls are handed their reply through the relay as well.
+     */
+    static final class ReplyRelay implements Handler<Message<JsonObject>> {
+        private final String destination;
+
+        private final long sentAt = System.nanoTime();
+
+        private final CallCoalescer.Flight flight;
+
+        private final OrchestrationMetrics metrics;
+
+        private AbstractReturningCallHandler target;
+
+        private ReplyRelay(final AbstractReturningCallHandler target, final String destination,
+                           final CallCoalescer.Flight flight, final OrchestrationMetrics metrics) {
+            this.target = target;
+            this.destination = destination;
+            this.flight = flight;
+            this.metrics = metrics;
+        }
+
+        private void detach() {
+            target = null;
+        }
+
+        @Override
+        public void handle(final Message<JsonObject> replyMessage) {
+            if (isAwaited(replyMessage.body())) {
+                target.onReply(this, replyMessage);
+            }
+        }
+
+        /**
+         * Called with the reply to the call, taken from the reply to the batch that contained it.
+         *
+         * @param reply The reply.
+         */
+        void onBatchReply(final JsonObject reply) {
+            if (isAwaited(reply)) {
+                target.receive(reply);
+            }
+        }
+
+        private boolean isAwaited(final JsonObject reply) {
+            if (flight != null) {
+                // Others may be waiting for the reply, even when the call handler itself no longer is.
+                flight.land(reply);
+            }
+            if (target == null) {
+                LOG.debug("Reply arrived for a call that is no longer waiting for it, ignoring.");
+                if (metrics != null) {
+                    metrics.onLateReply(destination);
+                }
+                return false;
+            }
+            return true;
+        }
+    }
 }
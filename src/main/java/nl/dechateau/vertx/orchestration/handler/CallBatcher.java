@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the calls to a single destination into batches, see {@link AbstractBatchingCallHandler}.
+ * <p/>
+ * A batch is sent when it's full, or when the batch window has passed since its first call was added. The calls are
+ * sent as one array of call messages; the reply should contain an array with a reply for each call, in the same order.
+ */
+final class CallBatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(CallBatcher.class);
+
+    private final String destination;
+
+    private final long window;
+
+    private final int maxSize;
+
+    private Batch pending;
+
+    CallBatcher(final String destination, final long window, final int maxSize) {
+        this.destination = destination;
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Add a call to the pending batch.
+     *
+     * @param relay   The relay handing the reply to the handler making the call.
+     * @param message The call message.
+     * @param vertx   The Vert.x instance to send the batch with.
+     */
+    void add(final AbstractReturningCallHandler.ReplyRelay relay, final JsonObject message, final Vertx vertx) {
+        final Batch full;
+        synchronized (this) {
+            if (pending == null) {
+                final Batch batch = new Batch();
+                pending = batch;
+                vertx.setTimer(window, new Handler<Long>() {
+                    @Override
+                    public void handle(final Long timerId) {
+                        flush(batch, vertx);
+                    }
+                });
+            }
+            pending.add(relay, message, vertx.currentContext());
+            if (pending.size() < maxSize) {
+                return;
+            }
+            full = pending;
+            pending = null;
+        }
+        full.send(vertx);
+    }
+
+    /**
+     * Remove a call from the pending batch, if it wasn't sent yet.
+     *
+     * @param relay The relay of the call.
+     */
+    synchronized void remove(final AbstractReturningCallHandler.ReplyRelay relay) {
+        if (pending != null) {
+            pending.remove(relay);
+        }
+    }
+
+    private void flush(final Batch batch, final Vertx vertx) {
+        synchronized (this) {
+            if (pending != batch) {
+                // Already sent because it was full.
+                return;
+            }
+            pending = null;
+        }
+        batch.send(vertx);
+    }
+
+    /**
+     * The calls collected for a single message.
+     */
+    private final class Batch implements Handler<Message<JsonObject>> {
+        private final List<AbstractReturningCallHandler.ReplyRelay> relays = new ArrayList<>();
+
+        private final List<Context> contexts = new ArrayList<>();
+
+        private final List<JsonObject> messages = new ArrayList<>();
+
+        private void add(final AbstractReturningCallHandler.ReplyRelay relay, final JsonObject message,
+                         final Context context) {
+            relays.add(relay);
+            contexts.add(context);
+            messages.add(message);
+        }
+
+        private void remove(final AbstractReturningCallHandler.ReplyRelay relay) {
+            final int index = relays.indexOf(relay);
+            if (index >= 0) {
+                relays.remove(index);
+                contexts.remove(index);
+                messages.remove(index);
+            }
+        }
+
+        private int size() {
+            return relays.size();
+        }
+
+        private void send(final Vertx vertx) {
+            if (relays.isEmpty()) {
+                // All calls were cancelled in the meantime.
+                return;
+            }
+
+            LOG.trace("Sending batch of {} call(s) to {}.", relays.size(), destination);
+            final JsonArray batch = new JsonArray();
+            for (final JsonObject message : messages) {
+                batch.addObject(message);
+            }
+            try {
+                vertx.eventBus().send(destination, batch, this);
+            } catch (Exception ex) {
+                LOG.error("Problem sending batch to {}:", destination, ex);
+                replyToAll(new JsonObject().putString("status", "error").putString("message", ex.getMessage()));
+            }
+        }
+
+        @Override
+        public void handle(final Message<JsonObject> replyMessage) {
+            final JsonObject reply = replyMessage.body();
+            if (!StringUtils.equals(reply.getString("status"), "ok")) {
+                // The batch as a whole failed.
+                replyToAll(reply);
+                return;
+            }
+
+            final JsonArray replies = reply.getArray("result");
+            if (replies == null || replies.size() != relays.size()) {
+                replyToAll(new JsonObject().putString("status", "error")
+                        .putString("message", "Batch reply from " + destination + " doesn't match the calls."));
+                return;
+            }
+
+            int index = 0;
+            for (final Object item : replies) {
+                deliver(index, item instanceof JsonObject ? (JsonObject) item : new JsonObject().putString("status", "error")
+                        .putString("message", "Batch reply from " + destination + " contains an invalid reply."));
+                index++;
+            }
+        }
+
+        private void replyToAll(final JsonObject reply) {
+            for (int i = 0; i < relays.size(); i++) {
+                deliver(i, i == 0 ? reply : reply.copy());
+            }
+        }
+
+        private void deliver(final int index, final JsonObject reply) {
+            final AbstractReturningCallHandler.ReplyRelay relay = relays.get(index);
+            final Context context = contexts.get(index);
+            if (context == null) {
+                relay.onBatchReply(reply);
+                return;
+            }
+            context.runOnContext(new Handler<Void>() {
+                @Override
+                public void handle(final Void event) {
+                    relay.onBatchReply(reply);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the calls underway to a single destination, so that identical calls made at the same time can share
+ * one request.
+ * <p/>
+ * The first handler making a call leads the flight and sends the actual message; the handlers making the same call
+ * before the reply arrived join the flight and each get a copy of the reply, on their own event loop.
+ */
+final class CallCoalescer {
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    /**
+     * Join the flight for a call, or start a new one when the call isn't underway yet.
+     *
+     * @param key     The key of the call (its encoded message).
+     * @param handler The handler making the call.
+     * @param context The event loop context on which the handler should get the reply.
+     * @return The flight, which is led by the handler when it should make the call itself.
+     */
+    synchronized Flight join(final String key, final AbstractReturningCallHandler handler, final Context context) {
+        Flight flight = flights.get(key);
+        if (flight == null) {
+            flight = new Flight(key, handler);
+            flights.put(key, flight);
+        } else {
+            flight.passengers.add(new Passenger(handler, context));
+        }
+        return flight;
+    }
+
+    /**
+     * A single call underway, with the handlers waiting for its reply.
+     */
+    final class Flight {
+        private final String key;
+
+        private final AbstractReturningCallHandler leader;
+
+        private final List<Passenger> passengers = new ArrayList<>();
+
+        private boolean isLanded = false;
+
+        private Flight(final String key, final AbstractReturningCallHandler leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        boolean isLedBy(final AbstractReturningCallHandler handler) {
+            return leader == handler;
+        }
+
+        /**
+         * Hand the reply to the handlers that joined the flight. Later replies (e.g. of hedged calls) are ignored.
+         *
+         * @param reply The reply to the call.
+         */
+        void land(final JsonObject reply) {
+            final List<Passenger> waiting;
+            synchronized (CallCoalescer.this) {
+                if (isLanded) {
+                    return;
+                }
+                isLanded = true;
+                close();
+                waiting = new ArrayList<>(passengers);
+                passengers.clear();
+            }
+
+            for (final Passenger passenger : waiting) {
+                passenger.deliver(reply.copy());
+            }
+        }
+
+        /**
+         * Called when the leader no longer waits for the reply, so that new calls don't join a flight that may never
+         * land. The handlers that already joined still get the reply, should it arrive.
+         *
+         * @return Whether other handlers still wait for the reply.
+         */
+        boolean abandon() {
+            synchronized (CallCoalescer.this) {
+                close();
+                return !passengers.isEmpty();
+            }
+        }
+
+        /**
+         * Called when a handler that joined the flight no longer waits for the reply.
+         *
+         * @param handler The handler.
+         */
+        void leave(final AbstractReturningCallHandler handler) {
+            synchronized (CallCoalescer.this) {
+                for (int i = 0; i < passengers.size(); i++) {
+                    if (passengers.get(i).handler == handler) {
+                        passengers.remove(i);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void close() {
+            if (flights.get(key) == this) {
+                flights.remove(key);
+            }
+        }
+    }
+
+    private static final class Passenger {
+        private final AbstractReturningCallHandler handler;
+
+        private final Context context;
+
+        private Passenger(final AbstractReturningCallHandler handler, final Context context) {
+            this.handler = handler;
+            this.context = context;
+        }
+
+        private void deliver(final JsonObject reply) {
+            if (context == null) {
+                handler.onSharedReply(reply);
+                return;
+            }
+            context.runOnContext(new Handler<Void>() {
+                @Override
+                public void handle(final Void event) {
+                    handler.onSharedReply(reply);
+                }
+            });
+        }
+    }
+}
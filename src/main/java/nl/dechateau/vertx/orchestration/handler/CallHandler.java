@@ -19,4 +19,8 @@ package nl.dechateau.vertx.orchestration.handler;
  * Marker interface for <code>handler</code>s within the orchestration that make calls over the event bus.
  */
 public interface CallHandler extends OrchestrationHandler {
+    /**
+     * Name of the field in a call message carrying the time (in millisecs) left for the sequence, if propagated.
+     */
+    String TIME_BUDGET_FIELD = "timeBudget";
 }
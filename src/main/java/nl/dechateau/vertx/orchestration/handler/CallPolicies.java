@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policies applied to the calls made to a destination, regardless of which handler makes them.
+ * <p/>
+ * The policies are given to the (top-level) builder of a call sequence and shared by all of its executions, including
+ * the paths of its decisions. They typically keep statistics across requests, so use one instance per verticle.
+ */
+public final class CallPolicies {
+    private final ConcurrentMap<String, HedgingPolicy> hedgingPolicies = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ReplyCache> replyCaches = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CallCoalescer> coalescers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CallBatcher> batchers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrencyLimit> callLimits = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrencyLimit> sequenceLimits = new ConcurrentHashMap<>();
+
+    private volatile WorkerPool workerPool;
+
+    private volatile TraceSink traceSink;
+
+    private volatile OrchestrationMetrics metrics;
+
+    private volatile double traceSampleRate;
+
+    /**
+     * Hedge the calls to a destination: when no reply was received in time, the call is sent once more and the first
+     * reply to arrive is used.
+     *
+     * @param destination The destination of the calls.
+     * @param policy      The hedging policy.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies hedge(final String destination, final HedgingPolicy policy) {
+        hedgingPolicies.put(destination, policy);
+        return this;
+    }
+
+    /**
+     * Cache the replies of a destination: a call with the same message as an earlier one is answered from the cache,
+     * without going over the event bus. Only use this for destinations whose calls are idempotent.
+     *
+     * @param destination The destination of the calls.
+     * @param cache       The cache for the replies.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies cache(final String destination, final ReplyCache cache) {
+        replyCaches.put(destination, cache);
+        return this;
+    }
+
+    /**
+     * Coalesce the calls to a destination: a call made while an identical one (same message) is still underway doesn't
+     * go over the event bus, but gets (a copy of) the reply to the call underway. Only use this for destinations whose
+     * calls are idempotent.
+     *
+     * @param destination The destination of the calls.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies coalesce(final String destination) {
+        coalescers.putIfAbsent(destination, new CallCoalescer());
+        return this;
+    }
+
+    /**
+     * Guard the calls to a destination with a circuit breaker: while the destination is in trouble, calls to it fail
+     * right away instead of adding to its load and waiting for a timeout.
+     *
+     * @param destination The destination of the calls.
+     * @param breaker     The circuit breaker.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies guard(final String destination, final CircuitBreaker breaker) {
+        circuitBreakers.put(destination, breaker);
+        return this;
+    }
+
+    /**
+     * Limit the number of calls to a destination in progress at the same time; calls beyond the limit fail right away
+     * with a {@link nl.dechateau.vertx.orchestration.ResponseListener.ErrorType#SERVICE_UNAVAILABLE}.
+     *
+     * @param destination The destination of the calls.
+     * @param limit       The (adaptive) limit.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies limitCalls(final String destination, final ConcurrencyLimit limit) {
+        callLimits.put(destination, limit);
+        return this;
+    }
+
+    /**
+     * Limit the number of executions of a call sequence in progress at the same time; executions beyond the limit wait
+     * for others to complete, or fail right away with a
+     * {@link nl.dechateau.vertx.orchestration.ResponseListener.ErrorType#SERVICE_UNAVAILABLE} when too many are waiting
+     * already. Time spent waiting counts towards the timeout of the execution.
+     *
+     * @param sequence The name of the sequence.
+     * @param limit    The (adaptive) limit.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies limitSequence(final String sequence, final ConcurrencyLimit limit) {
+        sequenceLimits.put(sequence, limit);
+        return this;
+    }
+
+    /**
+     * Set the pool on which handlers that offload their result processing have it done. Without it, a pool shared by
+     * all orchestrations is used, with a thread per processor.
+     *
+     * @param pool The worker pool.
+     * @return These policies, for chaining.
+     * @see AbstractReturningCallHandler#isProcessingOffloaded()
+     */
+    public CallPolicies offloadTo(final WorkerPool pool) {
+        workerPool = pool;
+        return this;
+    }
+
+    /**
+     * Trace a sample of the executions: the timings of their units and handlers are recorded, and handed to the sink
+     * once the execution has committed its outcome. Executions that aren't sampled aren't traced at all.
+     *
+     * @param sink       The sink for the traces, or <code>null</code> to stop tracing.
+     * @param sampleRate The fraction (between 0 and 1) of the executions to trace.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies trace(final TraceSink sink, final double sampleRate) {
+        traceSampleRate = sampleRate;
+        traceSink = sink;
+        return this;
+    }
+
+    /**
+     * Report the metrics of the orchestration (its sequences, handlers and destinations) to the given receiver.
+     *
+     * @param metrics The receiver of the metrics, e.g. a {@link MetricsRegistry}.
+     * @return These policies, for chaining.
+     */
+    public CallPolicies measure(final OrchestrationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    final HedgingPolicy getHedgingPolicy(final String destination) {
+        return hedgingPolicies.get(destination);
+    }
+
+    final ReplyCache getReplyCache(final String destination) {
+        return replyCaches.get(destination);
+    }
+
+    final CallCoalescer getCoalescer(final String destination) {
+        return coalescers.get(destination);
+    }
+
+    final CircuitBreaker getCircuitBreaker(final String destination) {
+        return circuitBreakers.get(destination);
+    }
+
+    final ConcurrencyLimit getCallLimit(final String destination) {
+        return callLimits.get(destination);
+    }
+
+    final ConcurrencyLimit getSequenceLimit(final String sequence) {
+        return sequenceLimits.get(sequence);
+    }
+
+    final WorkerPool getWorkerPool() {
+        final WorkerPool pool = workerPool;
+        return pool != null ? pool : DefaultWorkerPool.INSTANCE;
+    }
+
+    /**
+     * @return The receiver of the metrics, or <code>null</code> when the orchestration isn't measured.
+     */
+    final OrchestrationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return A new trace if the execution is sampled, or <code>null</code> otherwise.
+     */
+    final ExecutionTrace newTrace() {
+        final TraceSink sink = traceSink;
+        if (sink == null || ThreadLocalRandom.current().nextDouble() >= traceSampleRate) {
+            return null;
+        }
+        return new ExecutionTrace(sink);
+    }
+
+    /**
+     * Get the batcher for a destination, which is created on first use with the given settings.
+     */
+    final CallBatcher getBatcher(final String destination, final long window, final int maxSize) {
+        CallBatcher batcher = batchers.get(destination);
+        if (batcher == null) {
+            final CallBatcher created = new CallBatcher(destination, window, maxSize);
+            batcher = batchers.putIfAbsent(destination, created);
+            if (batcher == null) {
+                batcher = created;
+            }
+        }
+        return batcher;
+    }
+
+    /**
+     * Holder of the shared worker pool, which is only created on first use; most orchestrations don't offload any
+     * processing.
+     */
+    private static final class DefaultWorkerPool {
+        private static final WorkerPool INSTANCE = new WorkerPool(Runtime.getRuntime().availableProcessors(), 1000);
+    }
+}
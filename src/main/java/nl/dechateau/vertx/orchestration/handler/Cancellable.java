@@ -0,0 +1,27 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+/**
+ * Interface for <code>handler</code>s whose work can still be in progress when the orchestration no longer needs it.
+ */
+public interface Cancellable {
+    /**
+     * Called when the outcome of the orchestration has been decided before this handler completed; the handler should
+     * stop its work and no longer report to its response listener.
+     */
+    void cancel();
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for the calls to a destination: when too many of the recent calls failed or were slow, calls are
+ * failed right away with a {@link nl.dechateau.vertx.orchestration.ResponseListener.ErrorType#SERVICE_UNAVAILABLE}
+ * instead of being sent, giving the destination time to recover.
+ * <p/>
+ * The outcomes of the most recent calls are kept in a sliding window. When the ratio of failed calls (error replies and
+ * timeouts) or of slow calls in the window exceeds its threshold, the circuit opens. After a while it is half-open: a
+ * few probe calls are let through, and the circuit closes again once they all succeed, or reopens if any of them fails.
+ */
+public final class CircuitBreaker {
+    private static final int MIN_CALLS = 10;
+
+    private static final int PROBES = 3;
+
+    private static final byte SUCCESS = 0;
+
+    private static final byte FAILURE = 1;
+
+    private static final byte SLOW = 2;
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final byte[] window;
+
+    private final double failureRateThreshold;
+
+    private final long slowCallThreshold;
+
+    private final double slowCallRateThreshold;
+
+    private final long openDuration;
+
+    private State state = State.CLOSED;
+
+    private int callCount = 0;
+
+    private int failureCount = 0;
+
+    private int slowCount = 0;
+
+    private long openedAt;
+
+    private int probesStarted = 0;
+
+    private int probesSucceeded = 0;
+
+    private long rejectedCount = 0;
+
+    /**
+     * @param windowSize           The number of recent calls of which the outcome is kept.
+     * @param failureRateThreshold The ratio (0-1) of failed calls at which the circuit opens.
+     * @param openDuration         The time (in millisecs) the circuit stays open before probing the destination.
+     */
+    public CircuitBreaker(final int windowSize, final double failureRateThreshold, final long openDuration) {
+        this(windowSize, failureRateThreshold, Long.MAX_VALUE, 1, openDuration);
+    }
+
+    /**
+     * @param windowSize            The number of recent calls of which the outcome is kept.
+     * @param failureRateThreshold  The ratio (0-1) of failed calls at which the circuit opens.
+     * @param slowCallThreshold     The time (in millisecs) from which on a successful call counts as slow.
+     * @param slowCallRateThreshold The ratio (0-1) of slow calls at which the circuit opens.
+     * @param openDuration          The time (in millisecs) the circuit stays open before probing the destination.
+     */
+    public CircuitBreaker(final int windowSize, final double failureRateThreshold, final long slowCallThreshold,
+                          final double slowCallRateThreshold, final long openDuration) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size should be at least 1.");
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException("Failure rate threshold should be within (0, 1].");
+        }
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("Slow call rate threshold should be within (0, 1].");
+        }
+
+        window = new byte[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThreshold = slowCallThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+    }
+
+    /**
+     * @return The current state of the circuit.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return The number of calls that were failed without being sent.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Ask permission to make a call; every permitted call must be followed by {@link #onSuccess(long)},
+     * {@link #onFailure()} or {@link #onRelease()}.
+     *
+     * @return Whether the call may be made.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) {
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+
+        if (state == State.CLOSED || (state == State.HALF_OPEN && probesStarted < PROBES)) {
+            if (state == State.HALF_OPEN) {
+                probesStarted++;
+            }
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Register a successful call.
+     *
+     * @param replyTime The time (in millisecs) it took for the reply to arrive.
+     */
+    synchronized void onSuccess(final long replyTime) {
+        final boolean isSlow = replyTime >= slowCallThreshold;
+        if (state == State.HALF_OPEN) {
+            if (isSlow) {
+                open();
+            } else if (++probesSucceeded == PROBES) {
+                close();
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(isSlow ? SLOW : SUCCESS);
+        }
+    }
+
+    /**
+     * Register a failed call.
+     */
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(FAILURE);
+        }
+    }
+
+    /**
+     * Register a call of which the outcome won't be known, because the orchestration no longer needs it.
+     */
+    synchronized void onRelease() {
+        if (state == State.HALF_OPEN && probesStarted > probesSucceeded) {
+            // Let another call probe the destination instead.
+            probesStarted--;
+        }
+    }
+
+    private void record(final byte outcome) {
+        final int position = callCount % window.length;
+        if (callCount >= window.length) {
+            // The outcome in this position drops out of the window.
+            forget(window[position]);
+        }
+        window[position] = outcome;
+        callCount++;
+        if (callCount == 2 * window.length) {
+            // Keep the counter from overflowing, without losing track of the position in the ring.
+            callCount = window.length;
+        }
+        if (outcome == FAILURE) {
+            failureCount++;
+        } else if (outcome == SLOW) {
+            slowCount++;
+        }
+
+        final int calls = Math.min(callCount, window.length);
+        if (calls >= Math.min(MIN_CALLS, window.length)
+                && (failureCount >= failureRateThreshold * calls || slowCount >= slowCallRateThreshold * calls)) {
+            open();
+        }
+    }
+
+    private void forget(final byte outcome) {
+        if (outcome == FAILURE) {
+            failureCount--;
+        } else if (outcome == SLOW) {
+            slowCount--;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        callCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Adaptive limit on the number of executions (of a call sequence) or calls (to a destination) in progress at the same
+ * time, so that excess work is turned away early instead of making everything time out together.
+ * <p/>
+ * The limit adapts to the observed latencies, in AIMD fashion: while the latency stays close to the lowest latency seen
+ * recently and the limit is actually being used, the limit grows by about one per limit's worth of completions; when the
+ * latency rises beyond that, or work times out, the limit is cut by a tenth. Executions that can't be started right
+ * away wait in a bounded queue; calls are never queued.
+ */
+public final class ConcurrencyLimit {
+    // Ticket for work that was admitted right away, so there's nothing to withdraw.
+    private static final Cancellable ADMITTED = new Cancellable() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final double LATENCY_TOLERANCE = 2;
+
+    private static final int MIN_LATENCY_PERIOD = 1000;
+
+    private final int maxLimit;
+
+    private final int maxQueueSize;
+
+    private final Queue<Waiter> queue = new ArrayDeque<>();
+
+    private double limit;
+
+    private int inFlight = 0;
+
+    private long minLatency = Long.MAX_VALUE;
+
+    private long nextMinLatency = Long.MAX_VALUE;
+
+    private int samplesInPeriod = 0;
+
+    private long rejectedCount = 0;
+
+    /**
+     * @param initialLimit The limit to start with.
+     * @param maxLimit     The limit beyond which the limit doesn't grow.
+     * @param maxQueueSize The maximum number of executions waiting to be started.
+     */
+    public ConcurrencyLimit(final int initialLimit, final int maxLimit, final int maxQueueSize) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Limits should be at least 1, with the maximum no less than the initial limit.");
+        }
+        if (maxQueueSize < 0) {
+            throw new IllegalArgumentException("Queue size should not be negative.");
+        }
+
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * @return The current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The number of executions or calls in progress.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The number of executions waiting to be started.
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return The number of executions and calls that were turned away.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Start work right away if the limit allows it; every permitted piece of work must be followed by a release.
+     *
+     * @return Whether the work may be started.
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Start work when the limit allows it: right away, or once other work is released (on the given vert.x context);
+     * every admitted piece of work must be followed by a release.
+     *
+     * @param context    The context to start the work on when it was queued, or <code>null</code> to start it on
+     *                   whatever thread releases other work.
+     * @param onAdmitted The handler starting the work.
+     * @return A ticket to withdraw the work while it waits (e.g. when it times out), so that it doesn't take up room in
+     * the queue; or <code>null</code> when the work was turned away because the queue is full.
+     */
+    public Cancellable admit(final Context context, final Handler<Void> onAdmitted) {
+        synchronized (this) {
+            if (inFlight >= (int) limit || !queue.isEmpty()) {
+                if (queue.size() >= maxQueueSize) {
+                    rejectedCount++;
+                    return null;
+                }
+                final Waiter waiter = new Waiter(context, onAdmitted);
+                queue.add(waiter);
+                return waiter;
+            }
+            inFlight++;
+        }
+
+        onAdmitted.handle(null);
+        return ADMITTED;
+    }
+
+    /**
+     * Release work of which the latency isn't known (e.g. because it was cancelled).
+     */
+    public void release() {
+        final List<Waiter> admitted;
+        synchronized (this) {
+            inFlight--;
+            admitted = drain();
+        }
+        start(admitted);
+    }
+
+    /**
+     * Release completed work, adapting the limit to its latency.
+     *
+     * @param latency   The time (in nanosecs) the work took.
+     * @param isDropped Whether the work timed out, which is taken as a sign of overload regardless of its latency.
+     */
+    public void release(final long latency, final boolean isDropped) {
+        final List<Waiter> admitted;
+        synchronized (this) {
+            final boolean wasSaturated = inFlight >= limit / 2;
+            inFlight--;
+            adapt(latency, isDropped, wasSaturated);
+            admitted = drain();
+        }
+        start(admitted);
+    }
+
+    private void adapt(final long latency, final boolean isDropped, final boolean wasSaturated) {
+        // Track the lowest latency in the current period, so that the baseline follows changes in the destination.
+        minLatency = Math.min(minLatency, latency);
+        nextMinLatency = Math.min(nextMinLatency, latency);
+        if (++samplesInPeriod >= MIN_LATENCY_PERIOD) {
+            minLatency = nextMinLatency;
+            nextMinLatency = Long.MAX_VALUE;
+            samplesInPeriod = 0;
+        }
+
+        if (isDropped || latency > LATENCY_TOLERANCE * minLatency) {
+            limit = Math.max(1, limit * BACKOFF_RATIO);
+        } else if (wasSaturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private List<Waiter> drain() {
+        List<Waiter> admitted = null;
+        while (inFlight < (int) limit && !queue.isEmpty()) {
+            if (admitted == null) {
+                admitted = new ArrayList<>();
+            }
+            admitted.add(queue.poll());
+            inFlight++;
+        }
+        return admitted;
+    }
+
+    private static void start(final List<Waiter> admitted) {
+        if (admitted == null) {
+            return;
+        }
+        for (Waiter waiter : admitted) {
+            if (waiter.context != null) {
+                waiter.context.runOnContext(waiter.onAdmitted);
+            } else {
+                waiter.onAdmitted.handle(null);
+            }
+        }
+    }
+
+    /**
+     * Work waiting to be started.
+     */
+    private final class Waiter implements Cancellable {
+        private final Context context;
+
+        private final Handler<Void> onAdmitted;
+
+        private Waiter(final Context context, final Handler<Void> onAdmitted) {
+            this.context = context;
+            this.onAdmitted = onAdmitted;
+        }
+
+        /**
+         * Withdraw the work, if it is still waiting; work that was already admitted should be released as usual.
+         */
+        @Override
+        public void cancel() {
+            synchronized (ConcurrencyLimit.this) {
+                queue.remove(this);
+            }
+        }
+    }
+}
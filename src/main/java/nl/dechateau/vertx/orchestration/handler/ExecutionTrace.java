@@ -0,0 +1,342 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timings of a single execution of a call sequence, to find out where its time went.
+ * <p/>
+ * For every unit, the trace holds the time it took and the timings of its handlers: when each call was sent, when its
+ * reply was received, and when its result was processed, plus how long the handler then waited for the others in the
+ * unit. The critical path is made up of the handlers that completed last within their unit (or, within a graph, of the
+ * chain of calls that started each other), as they determined the duration of the sequence; a decision's time includes
+ * the units of its path, which are listed separately.
+ * <p/>
+ * Only sampled executions are traced, see {@link CallPolicies#trace(TraceSink, double)}; the others don't pay for it.
+ * All times are in nanosecs.
+ */
+public final class ExecutionTrace {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionTrace.class);
+
+    private final TraceSink sink;
+
+    private final long startedAt = System.nanoTime();
+
+    private long completedAt;
+
+    private String error;
+
+    private final List<UnitTiming> units = new ArrayList<>();
+
+    private final Map<Object, HandlerTiming> handlers = new IdentityHashMap<>();
+
+    ExecutionTrace(final TraceSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Record the start of a unit.
+     *
+     * @param name The name to show for the unit.
+     * @return The timing of the unit.
+     */
+    public synchronized UnitTiming startUnit(final String name) {
+        final UnitTiming unit = new UnitTiming(name, units.size() + 1);
+        units.add(unit);
+        return unit;
+    }
+
+    /**
+     * Record that the execution has committed its outcome, and hand the trace to the sink.
+     *
+     * @param error The error message if the execution failed, or <code>null</code> if it was successful.
+     */
+    public void complete(final String error) {
+        synchronized (this) {
+            if (completedAt != 0) {
+                return;
+            }
+            completedAt = System.nanoTime();
+            this.error = error;
+        }
+
+        try {
+            sink.onTrace(this);
+        } catch (Exception ex) {
+            LOG.warn("Problem handing trace to sink: {}.", ex.getMessage());
+        }
+    }
+
+    final synchronized void onSend(final Object handler) {
+        final HandlerTiming timing = handlers.get(handler);
+        if (timing != null && timing.sentAt == 0) {
+            timing.sentAt = System.nanoTime();
+        }
+    }
+
+    final synchronized void onReply(final Object handler) {
+        final HandlerTiming timing = handlers.get(handler);
+        if (timing != null && timing.repliedAt == 0) {
+            timing.repliedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return The time the execution took, until it committed its outcome.
+     */
+    public synchronized long getDuration() {
+        return completedAt - startedAt;
+    }
+
+    /**
+     * @return The error message if the execution failed, or <code>null</code> if it was successful.
+     */
+    public synchronized String getError() {
+        return error;
+    }
+
+    /**
+     * @return The timings of the units, in the order in which they were started.
+     */
+    public synchronized List<UnitTiming> getUnits() {
+        return new ArrayList<>(units);
+    }
+
+    /**
+     * @return The handlers on the critical path, in the order in which they were executed.
+     */
+    public synchronized List<HandlerTiming> getCriticalPath() {
+        final List<HandlerTiming> path = new ArrayList<>();
+        for (UnitTiming unit : units) {
+            path.addAll(unit.criticalPath);
+        }
+        return path;
+    }
+
+    /**
+     * @return The report of the trace.
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder report = new StringBuilder();
+        report.append("Sequence took ").append(millis(completedAt - startedAt))
+                .append(error == null ? " (completed)" : " (failed: " + error + ")");
+        for (UnitTiming unit : units) {
+            report.append("\n  Unit ").append(unit.index).append(" (").append(unit.name).append(") started at ")
+                    .append(millis(unit.startedAt - startedAt)).append(", took ")
+                    .append(unit.completedAt != 0 ? millis(unit.completedAt - unit.startedAt) : "-");
+            for (HandlerTiming handler : unit.handlers) {
+                report.append("\n    ").append(unit.criticalPath.contains(handler) ? "* " : "  ").append(handler);
+            }
+        }
+        report.append("\n  Critical path:");
+        for (HandlerTiming handler : getCriticalPath()) {
+            report.append(' ').append(handler.name);
+        }
+        return report.toString();
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1000000.0);
+    }
+
+    /**
+     * Timing of a single execution of a unit.
+     */
+    public final class UnitTiming {
+        private final String name;
+
+        private final int index;
+
+        private final long startedAt = System.nanoTime();
+
+        private long completedAt;
+
+        private final List<HandlerTiming> handlers = new ArrayList<>();
+
+        private List<HandlerTiming> criticalPath = Collections.emptyList();
+
+        private UnitTiming(final String name, final int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        /**
+         * Record the start of a handler in the unit.
+         *
+         * @param handler The handler.
+         * @return The timing of the handler.
+         */
+        public HandlerTiming startHandler(final Object handler) {
+            synchronized (ExecutionTrace.this) {
+                final HandlerTiming timing = new HandlerTiming(this, handler.getClass().getSimpleName());
+                handlers.add(timing);
+                ExecutionTrace.this.handlers.put(handler, timing);
+                return timing;
+            }
+        }
+
+        /**
+         * Record the completion of the unit, whose duration was determined by the handler that completed last.
+         */
+        public void complete() {
+            synchronized (ExecutionTrace.this) {
+                HandlerTiming last = null;
+                for (HandlerTiming handler : handlers) {
+                    if (last == null || handler.completedAt > last.completedAt) {
+                        last = handler;
+                    }
+                }
+                complete(last != null ? Collections.singletonList(last) : Collections.<HandlerTiming>emptyList());
+            }
+        }
+
+        /**
+         * Record the completion of the unit, whose duration was determined by the given chain of handlers.
+         *
+         * @param criticalPath The handlers that determined the duration of the unit.
+         */
+        public void complete(final List<HandlerTiming> criticalPath) {
+            synchronized (ExecutionTrace.this) {
+                completedAt = System.nanoTime();
+                this.criticalPath = criticalPath;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The time the unit took, or <code>0</code> when it didn't complete.
+         */
+        public long getDuration() {
+            synchronized (ExecutionTrace.this) {
+                return completedAt != 0 ? completedAt - startedAt : 0;
+            }
+        }
+
+        public List<HandlerTiming> getHandlers() {
+            synchronized (ExecutionTrace.this) {
+                return new ArrayList<>(handlers);
+            }
+        }
+    }
+
+    /**
+     * Timing of a single handler. Phases that didn't happen (e.g. a cached reply was used, so no call was sent) take
+     * no time.
+     */
+    public final class HandlerTiming {
+        private final UnitTiming unit;
+
+        private final String name;
+
+        private final long startedAt = System.nanoTime();
+
+        private long sentAt;
+
+        private long repliedAt;
+
+        private long completedAt;
+
+        private HandlerTiming(final UnitTiming unit, final String name) {
+            this.unit = unit;
+            this.name = name;
+        }
+
+        /**
+         * Record the completion of the handler.
+         */
+        public void complete() {
+            synchronized (ExecutionTrace.this) {
+                if (completedAt == 0) {
+                    completedAt = System.nanoTime();
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The time from the start of the handler until its call was sent.
+         */
+        public long getSendTime() {
+            synchronized (ExecutionTrace.this) {
+                return sentAt != 0 ? sentAt - startedAt : 0;
+            }
+        }
+
+        /**
+         * @return The time from sending the call until its reply was received.
+         */
+        public long getReplyTime() {
+            synchronized (ExecutionTrace.this) {
+                return sentAt != 0 && repliedAt != 0 ? repliedAt - sentAt : 0;
+            }
+        }
+
+        /**
+         * @return The time from receiving the reply until the handler completed.
+         */
+        public long getProcessingTime() {
+            synchronized (ExecutionTrace.this) {
+                return repliedAt != 0 && completedAt != 0 ? completedAt - repliedAt : 0;
+            }
+        }
+
+        /**
+         * @return The time the handler took, or <code>0</code> when it didn't complete.
+         */
+        public long getDuration() {
+            synchronized (ExecutionTrace.this) {
+                return completedAt != 0 ? completedAt - startedAt : 0;
+            }
+        }
+
+        /**
+         * @return The time from the completion of the handler until the completion of its unit.
+         */
+        public long getWaitTime() {
+            synchronized (ExecutionTrace.this) {
+                return completedAt != 0 && unit.completedAt != 0 ? unit.completedAt - completedAt : 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            synchronized (ExecutionTrace.this) {
+                if (completedAt == 0) {
+                    return name + ": did not complete";
+                }
+                return name + ": took " + millis(getDuration()) + " (send " + millis(getSendTime())
+                        + ", reply " + millis(getReplyTime()) + ", processing " + millis(getProcessingTime())
+                        + ", wait " + millis(getWaitTime()) + ")";
+            }
+        }
+    }
+}
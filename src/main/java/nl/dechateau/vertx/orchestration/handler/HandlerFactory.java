@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+/**
+ * Supplier of fresh <code>handler</code> instances, used for every execution of a call sequence.
+ * <p/>
+ * Registering a factory instead of a handler class lets the handler be created by a plain constructor call, e.g.:
+ * <pre>
+ *     addCall(new HandlerFactory&lt;FirstCallHandler&gt;() {
+ *         public FirstCallHandler newHandler() {
+ *             return new FirstCallHandler();
+ *         }
+ *     })
+ * </pre>
+ *
+ * @param <T> The type of the handlers.
+ */
+public interface HandlerFactory<T extends OrchestrationHandler> {
+    /**
+     * @return A new handler instance; never a previously returned one, as handlers hold the state of one execution.
+     */
+    T newHandler();
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import java.util.Arrays;
+
+/**
+ * Policy for hedging calls: if no reply arrived after a delay based on the observed reply times, the call is sent once
+ * more (to the same or an alternate destination) and whichever reply arrives first is used.
+ * <p/>
+ * To keep the extra load bounded, only a limited ratio of the calls is allowed to be hedged.
+ */
+public final class HedgingPolicy {
+    private static final int SAMPLE_SIZE = 256;
+
+    private static final int MIN_SAMPLES = 32;
+
+    private static final int SAMPLES_PER_UPDATE = 16;
+
+    private static final double MAX_TOKENS = 10;
+
+    private final double percentile;
+
+    private final double hedgeRatio;
+
+    private final String alternateDestination;
+
+    private final long[] samples = new long[SAMPLE_SIZE];
+
+    private int sampleCount = 0;
+
+    private int samplesSinceUpdate = 0;
+
+    private long delay;
+
+    private double tokens = 0;
+
+    /**
+     * @param percentile   The percentile (0-100) of the observed reply times after which to hedge, e.g. 95.
+     * @param initialDelay The delay (in millisecs) to use until enough reply times have been observed.
+     * @param hedgeRatio   The maximum ratio (0-1) of calls that may be hedged.
+     */
+    public HedgingPolicy(final double percentile, final long initialDelay, final double hedgeRatio) {
+        this(percentile, initialDelay, hedgeRatio, null);
+    }
+
+    /**
+     * @param percentile           The percentile (0-100) of the observed reply times after which to hedge, e.g. 95.
+     * @param initialDelay         The delay (in millisecs) to use until enough reply times have been observed.
+     * @param hedgeRatio           The maximum ratio (0-1) of calls that may be hedged.
+     * @param alternateDestination The destination to send the hedged call to, instead of the original one.
+     */
+    public HedgingPolicy(final double percentile, final long initialDelay, final double hedgeRatio,
+                         final String alternateDestination) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile should be within (0, 100].");
+        }
+        if (hedgeRatio < 0 || hedgeRatio > 1) {
+            throw new IllegalArgumentException("Hedge ratio should be within [0, 1].");
+        }
+
+        this.percentile = percentile;
+        this.hedgeRatio = hedgeRatio;
+        this.alternateDestination = alternateDestination;
+        delay = Math.max(initialDelay, 1);
+    }
+
+    /**
+     * Register a call, which earns (part of) the right to hedge a call.
+     *
+     * @return The delay (in millisecs) after which the call should be hedged.
+     */
+    synchronized long onCall() {
+        tokens = Math.min(tokens + hedgeRatio, MAX_TOKENS);
+        return delay;
+    }
+
+    /**
+     * @return Whether hedging a call is allowed, in which case the right to do so is used up.
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Register the time it took for a reply to arrive.
+     *
+     * @param replyTime The reply time (in millisecs).
+     */
+    synchronized void onReply(final long replyTime) {
+        samples[sampleCount++ % SAMPLE_SIZE] = replyTime;
+        if (sampleCount == 2 * SAMPLE_SIZE) {
+            // Keep the counter from overflowing, without losing track of the position in the ring.
+            sampleCount = SAMPLE_SIZE;
+        }
+
+        if (sampleCount >= MIN_SAMPLES && ++samplesSinceUpdate >= SAMPLES_PER_UPDATE) {
+            samplesSinceUpdate = 0;
+            final long[] sorted = Arrays.copyOf(samples, Math.min(sampleCount, SAMPLE_SIZE));
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            delay = Math.max(sorted[Math.max(index, 0)], 1);
+        }
+    }
+
+    String getDestination(final String destination) {
+        return alternateDestination != null ? alternateDestination : destination;
+    }
+}
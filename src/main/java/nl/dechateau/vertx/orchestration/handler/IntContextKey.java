@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+/**
+ * Key of a context var holding a primitive <code>int</code>, which is stored without boxing.
+ * <p/>
+ * Create keys once, as constants:
+ * <pre>
+ *     public static final IntContextKey SOME_INT = new IntContextKey("someInt");
+ * </pre>
+ */
+public final class IntContextKey extends SlotKey {
+    /**
+     * @param name The name under which the var shows up in the map of context vars.
+     */
+    public IntContextKey(final String name) {
+        super(name);
+    }
+
+    @Override
+    int getKind() {
+        return INT;
+    }
+}
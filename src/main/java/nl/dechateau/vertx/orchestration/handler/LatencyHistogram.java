@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies (in nanosecs), recorded without locking.
+ * <p/>
+ * Like an HDR histogram, values are counted in buckets whose width grows with the value: each power of two is split in
+ * 32 buckets, so every recorded value is known within about 3%, from a nanosec up to centuries, in a fixed amount of
+ * memory. Recording is a couple of atomic increments, so it can be done on the event loop of every request.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param value The latency (in nanosecs); negative values are counted as <code>0</code>.
+     */
+    public void record(final long value) {
+        final long latency = Math.max(value, 0);
+        counts.incrementAndGet(indexOf(latency));
+        count.incrementAndGet();
+        sum.addAndGet(latency);
+
+        long current = max.get();
+        while (latency > current && !max.compareAndSet(current, latency)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long recorded = count.get();
+        return recorded > 0 ? (double) sum.get() / recorded : 0;
+    }
+
+    /**
+     * Get the latency below which the given percentage of the recorded latencies fall. As the latencies are kept in
+     * buckets, the result is the highest latency within the bucket concerned (but never more than the maximum).
+     *
+     * @param percentile The percentage (between 0 and 100).
+     * @return The latency (in nanosecs), or <code>0</code> when nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return A summary of the recorded latencies (in nanosecs).
+     */
+    public JsonObject toJson() {
+        return new JsonObject()
+                .putNumber("count", getCount())
+                .putNumber("mean", getMean())
+                .putNumber("p50", getValueAtPercentile(50))
+                .putNumber("p90", getValueAtPercentile(90))
+                .putNumber("p99", getValueAtPercentile(99))
+                .putNumber("p999", getValueAtPercentile(99.9))
+                .putNumber("max", getMax());
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
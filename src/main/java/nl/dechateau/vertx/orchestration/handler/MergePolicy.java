@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+/**
+ * Policy deciding the value of a context var that was changed in more than one fork, when the forks are merged.
+ *
+ * @see OrchestrationContext#merge(java.util.List, MergePolicy)
+ */
+public interface MergePolicy {
+    /**
+     * The value set in the last fork (in the order of the forks) is kept.
+     */
+    MergePolicy LAST_WRITE_WINS = new MergePolicy() {
+        @Override
+        public Object resolve(final String name, final Object current, final Object incoming) {
+            return incoming;
+        }
+    };
+
+    /**
+     * The value set in the first fork (in the order of the forks) is kept.
+     */
+    MergePolicy FIRST_WRITE_WINS = new MergePolicy() {
+        @Override
+        public Object resolve(final String name, final Object current, final Object incoming) {
+            return current;
+        }
+    };
+
+    /**
+     * Changing the same var in more than one fork is an error.
+     */
+    MergePolicy FAIL_ON_CONFLICT = new MergePolicy() {
+        @Override
+        public Object resolve(final String name, final Object current, final Object incoming) {
+            throw new IllegalStateException("Context var '" + name + "' was changed in more than one branch.");
+        }
+    };
+
+    /**
+     * Resolve a conflict between the value of a var as merged so far and the value set in the next fork.
+     *
+     * @param name     The name of the var.
+     * @param current  The value as merged so far (<code>null</code> if the var was removed).
+     * @param incoming The value set in the next fork (<code>null</code> if the var was removed).
+     * @return The value the var should get (<code>null</code> to remove it).
+     * @throws IllegalStateException When the conflict can't be resolved.
+     */
+    Object resolve(String name, Object current, Object incoming);
+}
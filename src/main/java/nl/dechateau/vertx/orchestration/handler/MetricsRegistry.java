@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the orchestration, kept as counters and latency histograms.
+ * <p/>
+ * The metrics are named after what they measure: <code>sequence.&lt;name&gt;.*</code> for the executions of a call
+ * sequence, <code>handler.&lt;class&gt;.*</code> for the calls made by a handler class and
+ * <code>destination.&lt;address&gt;.*</code> for the calls to a destination. For each of these there is a
+ * <code>latency</code> histogram and counters for <code>started</code>, <code>completed</code>, <code>failed</code>
+ * (broken down by error type as <code>failed.&lt;TYPE&gt;</code>) and <code>inFlight</code>; calls also count as
+ * <code>cancelled</code>, and destinations count <code>lateReplies</code>.
+ */
+public final class MetricsRegistry implements OrchestrationMetrics {
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSequenceStarted(final String sequence) {
+        started("sequence." + sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSequenceCompleted(final String sequence, final long latency) {
+        completed("sequence." + sequence, latency);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onSequenceFailed(final String sequence, final ResponseListener.ErrorType type, final long latency) {
+        failed("sequence." + sequence, type, latency);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCallStarted(final String handler, final String destination) {
+        started("handler." + handler);
+        started("destination." + destination);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCallCompleted(final String handler, final String destination, final long latency) {
+        completed("handler." + handler, latency);
+        completed("destination." + destination, latency);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCallFailed(final String handler, final String destination, final ResponseListener.ErrorType type,
+                             final long latency) {
+        failed("handler." + handler, type, latency);
+        failed("destination." + destination, type, latency);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCallCancelled(final String handler, final String destination) {
+        cancelled("handler." + handler);
+        cancelled("destination." + destination);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onLateReply(final String destination) {
+        counter("destination." + destination + ".lateReplies").incrementAndGet();
+    }
+
+    /**
+     * @param name The name of the counter.
+     * @return The value of the counter, or <code>0</code> if nothing was counted.
+     */
+    public long getCount(final String name) {
+        final AtomicLong counter = counters.get(name);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * @param name The name of the histogram.
+     * @return The histogram, or <code>null</code> if nothing was recorded.
+     */
+    public LatencyHistogram getHistogram(final String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * @return A snapshot of all metrics, with the counters and (summaries of) the histograms by name.
+     */
+    public JsonObject toJson() {
+        final JsonObject counterValues = new JsonObject();
+        for (Map.Entry<String, AtomicLong> counter : new TreeMap<>(counters).entrySet()) {
+            counterValues.putNumber(counter.getKey(), counter.getValue().get());
+        }
+        final JsonObject histogramValues = new JsonObject();
+        for (Map.Entry<String, LatencyHistogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            histogramValues.putObject(histogram.getKey(), histogram.getValue().toJson());
+        }
+        return new JsonObject().putObject("counters", counterValues).putObject("histograms", histogramValues);
+    }
+
+    /**
+     * Periodically publish a snapshot of the metrics on the event bus.
+     *
+     * @param vertx    The vert.x instance.
+     * @param address  The address to publish the snapshots to.
+     * @param interval The time (in millisecs) between snapshots.
+     * @return The ID of the timer, for cancelling the publication.
+     */
+    public long publish(final Vertx vertx, final String address, final long interval) {
+        return vertx.setPeriodic(interval, new Handler<Long>() {
+            @Override
+            public void handle(final Long timerId) {
+                vertx.eventBus().publish(address, toJson());
+            }
+        });
+    }
+
+    private void started(final String prefix) {
+        counter(prefix + ".started").incrementAndGet();
+        counter(prefix + ".inFlight").incrementAndGet();
+    }
+
+    private void completed(final String prefix, final long latency) {
+        counter(prefix + ".completed").incrementAndGet();
+        counter(prefix + ".inFlight").decrementAndGet();
+        histogram(prefix + ".latency").record(latency);
+    }
+
+    private void failed(final String prefix, final ResponseListener.ErrorType type, final long latency) {
+        counter(prefix + ".failed").incrementAndGet();
+        if (type != null) {
+            counter(prefix + ".failed." + type).incrementAndGet();
+        }
+        counter(prefix + ".inFlight").decrementAndGet();
+        histogram(prefix + ".latency").record(latency);
+    }
+
+    private void cancelled(final String prefix) {
+        counter(prefix + ".cancelled").incrementAndGet();
+        counter(prefix + ".inFlight").decrementAndGet();
+    }
+
+    private AtomicLong counter(final String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            final AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private LatencyHistogram histogram(final String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+}
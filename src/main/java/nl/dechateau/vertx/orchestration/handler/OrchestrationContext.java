@@ -18,19 +18,100 @@ package nl.dechateau.vertx.orchestration.handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.EventBus;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * The context within which calls are orchestrated.
+ * <p/>
+ * Handlers of the same unit may set context vars concurrently (e.g. when their results are processed on worker
+ * threads): the vars are kept in a concurrent map, so writers of different vars don't block each other, and a var set
+ * by a handler is visible to every handler of the next unit. Cancellation is visible to all threads as well.
+ * <p/>
+ * Besides vars set by name, the context holds typed vars (see {@link ContextKey}), each in a slot of its own; primitive
+ * values are stored without boxing. The slots are atomic, so typed vars may be set concurrently just the same. They show up under the name of their key in the map of vars passed to
+ * {@link nl.dechateau.vertx.orchestration.ResponseListener#onCompleted(java.util.Map)}.
+ * <p/>
+ * Branches that shouldn't see each other's vars can each be given a {@link #fork()} of the context: a fork starts out
+ * with the vars of its parent without copying them, and only keeps its own changes. At the join, the changes of the
+ * branches are merged into the parent with a {@link MergePolicy}.
  */
-public final class OrchestrationContext {
+public final class OrchestrationContext implements Cancellable {
+    private static final CallPolicies NO_POLICIES = new CallPolicies();
+
+    // Marks a var that was removed in a fork, hiding the value of the parent.
+    private static final Object REMOVED = new Object();
+
+    private static final AtomicReferenceArray<SlotKey> NO_SLOT_KEYS = new AtomicReferenceArray<>(0);
+
+    private static final AtomicReferenceArray<Object> NO_OBJECT_SLOTS = new AtomicReferenceArray<>(0);
+
+    private static final AtomicLongArray NO_PRIMITIVE_SLOTS = new AtomicLongArray(0);
+
     private final Vertx vertx;
 
-    private final Map<String, Object> contextVars = new HashMap<>();
+    private final CallPolicies policies;
+
+    private final OrchestrationContext parent;
+
+    private final ConcurrentMap<String, Object> contextVars = new ConcurrentHashMap<>();
+
+    // The key of each slot that was ever set. A slot's value is written before its key, so a thread that sees the key
+    // also sees the value; a cleared object slot keeps its key and holds null.
+    private final AtomicReferenceArray<SlotKey> slotKeys;
+
+    private final AtomicReferenceArray<Object> objectSlots;
+
+    private final AtomicLongArray primitiveSlots;
+
+    private volatile boolean hasTypedVars = false;
+
+    private volatile ConcurrentMap<SlotKey, Object> overflowVars;
+
+    private boolean hasDeadline = false;
+
+    private long deadline;
+
+    private volatile boolean cancelled = false;
+
+    private ExecutionTrace trace;
+
+    private List<Cancellable> cancellables;
 
     public OrchestrationContext(final Vertx vertx) {
+        this(vertx, null);
+    }
+
+    public OrchestrationContext(final Vertx vertx, final CallPolicies policies) {
+        this(vertx, policies != null ? policies : NO_POLICIES, null);
+    }
+
+    private OrchestrationContext(final Vertx vertx, final CallPolicies policies, final OrchestrationContext parent) {
         this.vertx = vertx;
+        this.policies = policies;
+        this.parent = parent;
+
+        if (parent == null) {
+            final int slots = SlotKey.getKeyCount();
+            slotKeys = new AtomicReferenceArray<>(slots);
+            objectSlots = new AtomicReferenceArray<>(slots);
+            primitiveSlots = new AtomicLongArray(slots);
+        } else {
+            // A fork typically changes only a few vars, so it keeps its typed vars in a sparse map instead of a slot
+            // per key; forking and merging then don't depend on the number of keys.
+            slotKeys = NO_SLOT_KEYS;
+            objectSlots = NO_OBJECT_SLOTS;
+            primitiveSlots = NO_PRIMITIVE_SLOTS;
+        }
     }
 
     final Vertx getVertx() {
@@ -41,15 +122,523 @@ public final class OrchestrationContext {
         return vertx.eventBus();
     }
 
+    final CallPolicies getPolicies() {
+        return policies;
+    }
+
     public final Object getContextVar(final String key) {
-        return contextVars.get(key);
+        final Object value = contextVars.get(key);
+        if (value == null) {
+            return parent != null ? parent.getContextVar(key) : null;
+        }
+        return value != REMOVED ? value : null;
     }
 
+    /**
+     * Set a context var; setting it to <code>null</code> removes it.
+     *
+     * @param key   The key of the var.
+     * @param value The value of the var.
+     * @return The previous value of the var, or <code>null</code> if it wasn't set.
+     */
     public final Object setContextVar(final String key, final Object value) {
-        return contextVars.put(key, value);
+        final Object previous;
+        if (value != null) {
+            previous = contextVars.put(key, value);
+        } else if (parent == null) {
+            previous = contextVars.remove(key);
+        } else {
+            previous = contextVars.put(key, REMOVED);
+        }
+        return unmask(previous, key);
+    }
+
+    /**
+     * @param key The key of the var.
+     * @param <T> The type of the var.
+     * @return The value of the var, or <code>null</code> if it isn't set.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T getContextVar(final ContextKey<T> key) {
+        final int index = key.getIndex();
+        final Object value;
+        if (index < objectSlots.length()) {
+            value = objectSlots.get(index);
+        } else {
+            value = getOverflowVar(key);
+        }
+        if (value == null) {
+            return parent != null ? parent.getContextVar(key) : null;
+        }
+        return value != REMOVED ? (T) value : null;
+    }
+
+    /**
+     * Set a typed context var; setting it to <code>null</code> removes it.
+     *
+     * @param key   The key of the var.
+     * @param value The value of the var.
+     * @param <T>   The type of the var.
+     * @return The previous value of the var, or <code>null</code> if it wasn't set.
+     */
+    @SuppressWarnings("unchecked")
+    public final <T> T setContextVar(final ContextKey<T> key, final T value) {
+        hasTypedVars = true;
+        final Object stored = value != null || parent == null ? value : REMOVED;
+        final int index = key.getIndex();
+        final Object previous;
+        if (index < objectSlots.length()) {
+            previous = objectSlots.getAndSet(index, stored);
+            slotKeys.set(index, key);
+        } else {
+            previous = setOverflowVar(key, stored);
+        }
+        if (previous == null && parent != null) {
+            return parent.getContextVar(key);
+        }
+        return previous != REMOVED ? (T) previous : null;
+    }
+
+    /**
+     * @param key The key of the var.
+     * @return The value of the var, or <code>0</code> if it isn't set.
+     */
+    public final int getContextVar(final IntContextKey key) {
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            if (slotKeys.get(index) != null) {
+                return (int) primitiveSlots.get(index);
+            }
+        } else {
+            final Object value = getOverflowVar(key);
+            if (value != null) {
+                return (Integer) value;
+            }
+        }
+        return parent != null ? parent.getContextVar(key) : 0;
+    }
+
+    /**
+     * @param key   The key of the var.
+     * @param value The value of the var.
+     */
+    public final void setContextVar(final IntContextKey key, final int value) {
+        hasTypedVars = true;
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            primitiveSlots.set(index, value);
+            slotKeys.set(index, key);
+            return;
+        }
+        setOverflowVar(key, value);
+    }
+
+    /**
+     * @param key The key of the var.
+     * @return The value of the var, or <code>0</code> if it isn't set.
+     */
+    public final long getContextVar(final LongContextKey key) {
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            if (slotKeys.get(index) != null) {
+                return primitiveSlots.get(index);
+            }
+        } else {
+            final Object value = getOverflowVar(key);
+            if (value != null) {
+                return (Long) value;
+            }
+        }
+        return parent != null ? parent.getContextVar(key) : 0;
+    }
+
+    /**
+     * @param key   The key of the var.
+     * @param value The value of the var.
+     */
+    public final void setContextVar(final LongContextKey key, final long value) {
+        hasTypedVars = true;
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            primitiveSlots.set(index, value);
+            slotKeys.set(index, key);
+            return;
+        }
+        setOverflowVar(key, value);
+    }
+
+    /**
+     * @param key The key of the var.
+     * @return The value of the var, or <code>0</code> if it isn't set.
+     */
+    public final double getContextVar(final DoubleContextKey key) {
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            if (slotKeys.get(index) != null) {
+                return Double.longBitsToDouble(primitiveSlots.get(index));
+            }
+        } else {
+            final Object value = getOverflowVar(key);
+            if (value != null) {
+                return (Double) value;
+            }
+        }
+        return parent != null ? parent.getContextVar(key) : 0;
+    }
+
+    /**
+     * @param key   The key of the var.
+     * @param value The value of the var.
+     */
+    public final void setContextVar(final DoubleContextKey key, final double value) {
+        hasTypedVars = true;
+        final int index = key.getIndex();
+        if (index < slotKeys.length()) {
+            primitiveSlots.set(index, Double.doubleToRawLongBits(value));
+            slotKeys.set(index, key);
+            return;
+        }
+        setOverflowVar(key, value);
+    }
+
+    /**
+     * Start tracing the orchestration, if it is sampled according to its policies.
+     *
+     * @return The trace, or <code>null</code> when the orchestration isn't traced.
+     */
+    public final ExecutionTrace startTrace() {
+        trace = policies.newTrace();
+        return trace;
+    }
+
+    /**
+     * @return The receiver of the metrics of the orchestration, or <code>null</code> when it isn't measured.
+     */
+    public final OrchestrationMetrics getMetrics() {
+        return policies.getMetrics();
+    }
+
+    /**
+     * @param sequence The name of the call sequence.
+     * @return The limit on concurrent executions of the sequence, or <code>null</code> when they aren't limited.
+     */
+    public final ConcurrencyLimit getSequenceLimit(final String sequence) {
+        return policies.getSequenceLimit(sequence);
+    }
+
+    /**
+     * @return The trace of the orchestration, or <code>null</code> when it isn't traced.
+     */
+    public final ExecutionTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Set the moment by which the orchestration should be finished.
+     *
+     * @param timeout The time (in millisecs) from now until the deadline.
+     */
+    public final void setDeadline(final long timeout) {
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        hasDeadline = true;
+    }
+
+    /**
+     * @return The time (in millisecs) left until the deadline, rounded up so that it is only <code>0</code> or negative
+     * once the deadline has passed; or {@link Long#MAX_VALUE} when no deadline was set.
+     */
+    public final long getRemainingTime() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return TimeUnit.NANOSECONDS.toMillis(remaining);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+
+    /**
+     * Cancel the orchestration: no further handlers are started, and those still in progress are cancelled. Cancelling
+     * a fork only cancels the work within the fork (and its own forks).
+     */
+    @Override
+    public final void cancel() {
+        final List<Cancellable> toCancel;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toCancel = cancellables;
+            cancellables = null;
+        }
+        if (parent != null) {
+            // The fork's work is dropped, so the parent needn't hold on to the fork anymore.
+            parent.removeCancellable(this);
+        }
+
+        if (toCancel != null) {
+            for (Cancellable cancellable : toCancel) {
+                cancellable.cancel();
+            }
+        }
+    }
+
+    /**
+     * @return Whether the orchestration has been cancelled.
+     */
+    public final boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Register work in progress, to be cancelled along with the orchestration. Cancelling work that has already
+     * completed should have no effect.
+     *
+     * @param cancellable The work to cancel.
+     */
+    public final void addCancellable(final Cancellable cancellable) {
+        synchronized (this) {
+            if (!cancelled) {
+                if (cancellables == null) {
+                    cancellables = new ArrayList<>();
+                }
+                cancellables.add(cancellable);
+                return;
+            }
+        }
+        cancellable.cancel();
+    }
+
+    /**
+     * Unregister work that is no longer in progress, so that it isn't held on to until the orchestration is done.
+     *
+     * @param cancellable The work that was registered.
+     */
+    public final void removeCancellable(final Cancellable cancellable) {
+        synchronized (this) {
+            if (cancellables == null) {
+                return;
+            }
+            // Recently registered work tends to complete first, so search from the end.
+            for (int i = cancellables.size() - 1; i >= 0; i--) {
+                if (cancellables.get(i) == cancellable) {
+                    cancellables.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fork off a context for a branch of the orchestration. The fork starts out with the vars of this context, but
+     * changes made to either of them aren't visible to the other; this context shouldn't be changed while the branch is
+     * in progress, though. The fork shares the deadline of this context, and is cancelled along with it.
+     *
+     * @return The fork.
+     */
+    public final OrchestrationContext fork() {
+        final OrchestrationContext fork = new OrchestrationContext(vertx, policies, this);
+        fork.hasDeadline = hasDeadline;
+        fork.deadline = deadline;
+        fork.trace = trace;
+        addCancellable(fork);
+        return fork;
+    }
+
+    /**
+     * Merge the changes made in forks of this context into it. When a var was changed in more than one fork, the merge
+     * policy decides which value it gets, in the order of the forks. Once merged, the forks are no longer cancelled
+     * along with this context.
+     *
+     * @param forks  The forks.
+     * @param policy The policy for vars changed in more than one fork.
+     * @return The context vars, after the merge.
+     * @throws IllegalStateException When the merge policy can't resolve a conflict.
+     */
+    public final Map<String, Object> merge(final List<OrchestrationContext> forks, final MergePolicy policy) {
+        // Keyed on either the name or the typed key of a var.
+        final Map<Object, Object> changes = new HashMap<>();
+        for (OrchestrationContext fork : forks) {
+            if (fork.parent != this) {
+                throw new IllegalArgumentException("Only forks of a context can be merged into it.");
+            }
+            removeCancellable(fork);
+            for (Map.Entry<String, Object> var : fork.contextVars.entrySet()) {
+                addChange(changes, var.getKey(), var.getKey(), var.getValue(), policy);
+            }
+            for (int i = 0; i < fork.slotKeys.length(); i++) {
+                final SlotKey key = fork.slotKeys.get(i);
+                final Object value = key != null ? fork.getSlotValue(key, i) : null;
+                if (value != null) {
+                    addChange(changes, key, key.getName(), value, policy);
+                }
+            }
+            final ConcurrentMap<SlotKey, Object> overflow = fork.overflowVars;
+            if (overflow != null) {
+                for (Map.Entry<SlotKey, Object> var : overflow.entrySet()) {
+                    addChange(changes, var.getKey(), var.getKey().getName(), var.getValue(), policy);
+                }
+            }
+        }
+
+        for (Map.Entry<Object, Object> change : changes.entrySet()) {
+            final Object value = change.getValue() != REMOVED ? change.getValue() : null;
+            if (change.getKey() instanceof SlotKey) {
+                setSlotValue((SlotKey) change.getKey(), value);
+            } else {
+                setContextVar((String) change.getKey(), value);
+            }
+        }
+        return getVars();
+    }
+
+    /**
+     * @return The context vars, the way they're reported when a handler completes.
+     */
+    public final Map<String, Object> getContextVars() {
+        return getVars();
     }
 
     final Map<String, Object> getVars() {
-        return contextVars;
+        if (parent != null) {
+            // Gathering the vars of a fork takes its ancestors too, so only do so when they're actually needed.
+            return new ForkVars();
+        }
+        if (!hasTypedVars) {
+            return contextVars;
+        }
+
+        // Only pay for boxing the typed vars when they're actually used.
+        final Map<String, Object> vars = new HashMap<>();
+        collectVars(vars);
+        return vars;
+    }
+
+    private void collectVars(final Map<String, Object> vars) {
+        if (parent != null) {
+            parent.collectVars(vars);
+        }
+
+        for (Map.Entry<String, Object> var : contextVars.entrySet()) {
+            putVar(vars, var.getKey(), var.getValue());
+        }
+        for (int i = 0; i < slotKeys.length(); i++) {
+            final SlotKey key = slotKeys.get(i);
+            final Object value = key != null ? getSlotValue(key, i) : null;
+            if (value != null) {
+                putVar(vars, key.getName(), value);
+            }
+        }
+        final ConcurrentMap<SlotKey, Object> overflow = overflowVars;
+        if (overflow != null) {
+            for (Map.Entry<SlotKey, Object> var : overflow.entrySet()) {
+                putVar(vars, var.getKey().getName(), var.getValue());
+            }
+        }
+    }
+
+    private static void putVar(final Map<String, Object> vars, final String name, final Object value) {
+        if (value == REMOVED) {
+            vars.remove(name);
+        } else {
+            vars.put(name, value);
+        }
+    }
+
+    private static void addChange(final Map<Object, Object> changes, final Object key, final String name,
+                                  final Object value, final MergePolicy policy) {
+        if (changes.containsKey(key)) {
+            final Object current = changes.get(key);
+            final Object resolved = policy.resolve(name, current != REMOVED ? current : null,
+                    value != REMOVED ? value : null);
+            changes.put(key, resolved != null ? resolved : REMOVED);
+        } else {
+            changes.put(key, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setSlotValue(final SlotKey key, final Object value) {
+        switch (key.getKind()) {
+            case SlotKey.INT:
+                if (value != null) {
+                    setContextVar((IntContextKey) key, (Integer) value);
+                }
+                break;
+            case SlotKey.LONG:
+                if (value != null) {
+                    setContextVar((LongContextKey) key, (Long) value);
+                }
+                break;
+            case SlotKey.DOUBLE:
+                if (value != null) {
+                    setContextVar((DoubleContextKey) key, (Double) value);
+                }
+                break;
+            default:
+                setContextVar((ContextKey<Object>) key, value);
+        }
+    }
+
+    private Object unmask(final Object previous, final String key) {
+        if (previous == null && parent != null) {
+            return parent.getContextVar(key);
+        }
+        return previous != REMOVED ? previous : null;
+    }
+
+    private Object getSlotValue(final SlotKey key, final int index) {
+        switch (key.getKind()) {
+            case SlotKey.INT:
+                return (int) primitiveSlots.get(index);
+            case SlotKey.LONG:
+                return primitiveSlots.get(index);
+            case SlotKey.DOUBLE:
+                return Double.longBitsToDouble(primitiveSlots.get(index));
+            default:
+                return objectSlots.get(index);
+        }
+    }
+
+    private Object getOverflowVar(final SlotKey key) {
+        final ConcurrentMap<SlotKey, Object> overflow = overflowVars;
+        return overflow != null ? overflow.get(key) : null;
+    }
+
+    private Object setOverflowVar(final SlotKey key, final Object value) {
+        // The key has no slot here: either it was created after this context, or this context is a fork.
+        ConcurrentMap<SlotKey, Object> overflow = overflowVars;
+        if (overflow == null) {
+            synchronized (this) {
+                overflow = overflowVars;
+                if (overflow == null) {
+                    overflow = new ConcurrentHashMap<>();
+                    overflowVars = overflow;
+                }
+            }
+        }
+        if (value == null) {
+            return overflow.remove(key);
+        }
+        return overflow.put(key, value);
+    }
+
+    /**
+     * The vars of a fork, which are only gathered once they're looked at.
+     */
+    private final class ForkVars extends AbstractMap<String, Object> {
+        private Map<String, Object> vars;
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            if (vars == null) {
+                vars = new HashMap<>();
+                collectVars(vars);
+            }
+            return vars.entrySet();
+        }
     }
 }
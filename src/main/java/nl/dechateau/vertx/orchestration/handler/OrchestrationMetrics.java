@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+
+/**
+ * Receiver of the events that make up the metrics of the orchestration, to be implemented on top of a metrics library;
+ * {@link MetricsRegistry} keeps the metrics itself.
+ * <p/>
+ * Events are reported on the event loops of the orchestrations, so implementations must be thread safe and shouldn't
+ * block. All latencies are in nanosecs.
+ *
+ * @see CallPolicies#measure(OrchestrationMetrics)
+ */
+public interface OrchestrationMetrics {
+    /**
+     * Called when an execution of a call sequence is started.
+     *
+     * @param sequence The name of the sequence.
+     */
+    void onSequenceStarted(final String sequence);
+
+    /**
+     * Called when an execution of a call sequence has completed successfully.
+     *
+     * @param sequence The name of the sequence.
+     * @param latency  The time the execution took.
+     */
+    void onSequenceCompleted(final String sequence, final long latency);
+
+    /**
+     * Called when an execution of a call sequence has failed; a timeout of the entire sequence is reported with
+     * {@link ResponseListener.ErrorType#TIMEOUT}.
+     *
+     * @param sequence The name of the sequence.
+     * @param type     The type of the error, or <code>null</code> if the error was reported without one.
+     * @param latency  The time the execution took.
+     */
+    void onSequenceFailed(final String sequence, final ResponseListener.ErrorType type, final long latency);
+
+    /**
+     * Called when a call is sent to a destination (cached and coalesced calls aren't sent).
+     *
+     * @param handler     The name of the handler class.
+     * @param destination The destination of the call.
+     */
+    void onCallStarted(final String handler, final String destination);
+
+    /**
+     * Called when a successful reply to a call was received.
+     *
+     * @param handler     The name of the handler class.
+     * @param destination The destination of the call.
+     * @param latency     The time until the reply was received.
+     */
+    void onCallCompleted(final String handler, final String destination, final long latency);
+
+    /**
+     * Called when a call has failed: either an error reply was received (without a type), or no reply was received in
+     * time ({@link ResponseListener.ErrorType#TIMEOUT}).
+     *
+     * @param handler     The name of the handler class.
+     * @param destination The destination of the call.
+     * @param type        The type of the error, or <code>null</code> for an error reply.
+     * @param latency     The time until the call failed.
+     */
+    void onCallFailed(final String handler, final String destination, final ResponseListener.ErrorType type,
+                      final long latency);
+
+    /**
+     * Called when the orchestration no longer waits for the reply to a call, as its outcome has been decided.
+     *
+     * @param handler     The name of the handler class.
+     * @param destination The destination of the call.
+     */
+    void onCallCancelled(final String handler, final String destination);
+
+    /**
+     * Called when a reply arrived after the orchestration stopped waiting for it.
+     *
+     * @param destination The destination of the call.
+     */
+    void onLateReply(final String destination);
+}
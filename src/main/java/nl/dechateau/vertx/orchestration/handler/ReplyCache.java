@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache for the replies of a destination whose answers to the same call message change rarely.
+ * <p/>
+ * Replies are kept for a fixed time, and when the cache is full the least recently used reply is evicted. Only
+ * successful replies are cached. Hits and misses are counted, to judge whether the cache pays off.
+ */
+public final class ReplyCache {
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    private final Map<String, Entry> entries;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * @param maxSize    The maximum number of replies to keep.
+     * @param timeToLive The time (in millisecs) a reply may be used after it was received.
+     */
+    public ReplyCache(final int maxSize, final long timeToLive) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size should be positive.");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live should be positive.");
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > ReplyCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Look up the reply for a call message.
+     *
+     * @param key The key of the call (its encoded message).
+     * @return A copy of the cached reply, or <code>null</code> if there is no (live) reply for the call.
+     */
+    synchronized JsonObject get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.receivedAt > timeToLive) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        // Handlers are free to modify the result they process, so don't hand out the cached instance.
+        return entry.reply.copy();
+    }
+
+    /**
+     * Store the reply for a call message.
+     *
+     * @param key   The key of the call (its encoded message).
+     * @param reply The reply.
+     */
+    synchronized void put(final String key, final JsonObject reply) {
+        entries.put(key, new Entry(reply.copy(), System.nanoTime()));
+    }
+
+    /**
+     * @return The number of calls for which a cached reply was used.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of calls for which no cached reply was available.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of replies currently cached (including the ones that expired but weren't evicted yet).
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final JsonObject reply;
+
+        private final long receivedAt;
+
+        private Entry(final JsonObject reply, final long receivedAt) {
+            this.reply = reply;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
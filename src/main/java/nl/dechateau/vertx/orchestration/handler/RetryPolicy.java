@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import nl.dechateau.vertx.orchestration.ResponseListener;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy for retrying failed calls, after a backoff that grows exponentially with each attempt; the actual backoff is
+ * drawn at random below that ("full jitter"), so that calls that failed together aren't retried together.
+ * <p/>
+ * A call is only retried when the failure is deemed transient by the retry condition, and when the retry can still be
+ * made before the deadline of the sequence. To keep retry storms bounded, only a limited ratio of the calls is allowed to
+ * be retried; share a policy between the handlers whose retries should be bounded together.
+ */
+public final class RetryPolicy {
+    private static final double MAX_TOKENS = 10;
+
+    /**
+     * Condition under which a failed call is retried.
+     */
+    public interface Condition {
+        /**
+         * @param errorType    The type of the error: {@link ResponseListener.ErrorType#TIMEOUT} when no reply was
+         *                     received in time, <code>null</code> for an error reply or a failure to send the call.
+         * @param errorMessage The message that accompanied the error.
+         * @return Whether the call should be retried.
+         */
+        boolean isRetryable(final ResponseListener.ErrorType errorType, final String errorMessage);
+    }
+
+    /**
+     * Retry calls that failed in any way.
+     */
+    public static final Condition ANY_FAILURE = new Condition() {
+        @Override
+        public boolean isRetryable(final ResponseListener.ErrorType errorType, final String errorMessage) {
+            return true;
+        }
+    };
+
+    /**
+     * Only retry calls that timed out.
+     */
+    public static final Condition TIMEOUTS = new Condition() {
+        @Override
+        public boolean isRetryable(final ResponseListener.ErrorType errorType, final String errorMessage) {
+            return errorType == ResponseListener.ErrorType.TIMEOUT;
+        }
+    };
+
+    private final int maxAttempts;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final double retryRatio;
+
+    private final Condition condition;
+
+    private double tokens = MAX_TOKENS;
+
+    private long retryCount = 0;
+
+    /**
+     * @param maxAttempts    The maximum number of attempts (including the first one) for a call.
+     * @param initialBackoff The backoff (in millisecs) before the first retry, which doubles for every next one.
+     * @param maxBackoff     The maximum backoff (in millisecs).
+     * @param retryRatio     The maximum ratio (0-1) of calls that may be retried.
+     */
+    public RetryPolicy(final int maxAttempts, final long initialBackoff, final long maxBackoff, final double retryRatio) {
+        this(maxAttempts, initialBackoff, maxBackoff, retryRatio, ANY_FAILURE);
+    }
+
+    /**
+     * @param maxAttempts    The maximum number of attempts (including the first one) for a call.
+     * @param initialBackoff The backoff (in millisecs) before the first retry, which doubles for every next one.
+     * @param maxBackoff     The maximum backoff (in millisecs).
+     * @param retryRatio     The maximum ratio (0-1) of calls that may be retried.
+     * @param condition      The condition under which a failed call is retried.
+     */
+    public RetryPolicy(final int maxAttempts, final long initialBackoff, final long maxBackoff, final double retryRatio,
+                       final Condition condition) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Maximum number of attempts should be at least 1.");
+        }
+        if (initialBackoff < 1 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Backoffs should be at least 1, with the maximum no less than the initial backoff.");
+        }
+        if (retryRatio < 0 || retryRatio > 1) {
+            throw new IllegalArgumentException("Retry ratio should be within [0, 1].");
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryRatio = retryRatio;
+        this.condition = condition;
+    }
+
+    /**
+     * @return The number of retries made.
+     */
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * Register a call, which earns (part of) the right to retry a call.
+     */
+    synchronized void onCall() {
+        tokens = Math.min(tokens + retryRatio, MAX_TOKENS);
+    }
+
+    /**
+     * Decide whether to retry a failed call, in which case the right to do so is used up.
+     *
+     * @param attempts      The number of attempts made so far.
+     * @param errorType     The type of the error, if any.
+     * @param errorMessage  The message that accompanied the error.
+     * @param remainingTime The time (in millisecs) left until the deadline of the sequence.
+     * @return The backoff (in millisecs) after which to retry the call, or <code>-1</code> to not retry it.
+     */
+    synchronized long getBackoff(final int attempts, final ResponseListener.ErrorType errorType,
+                                 final String errorMessage, final long remainingTime) {
+        if (attempts >= maxAttempts || tokens < 1 || !condition.isRetryable(errorType, errorMessage)) {
+            return -1;
+        }
+
+        final long ceiling = Math.min(maxBackoff, initialBackoff << Math.min(attempts - 1, 30));
+        final long backoff = 1 + ThreadLocalRandom.current().nextLong(ceiling);
+        if (backoff >= remainingTime) {
+            // The retry couldn't be answered in time anyway.
+            return -1;
+        }
+        tokens--;
+        retryCount++;
+        return backoff;
+    }
+}
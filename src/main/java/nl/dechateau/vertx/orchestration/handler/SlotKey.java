@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of the typed context keys, each of which is resolved to its own slot in the context.
+ * <p/>
+ * Slots are numbered in the order in which keys are created. Keys are meant to be constants, so a context created after
+ * the handlers using them have been loaded has a slot for each of them; keys created later are still supported, just
+ * without the benefit of a slot of their own. Forks of a context have no slots; they keep the few typed vars they change
+ * in a sparse map.
+ */
+abstract class SlotKey {
+    static final int OBJECT = 0;
+
+    static final int INT = 1;
+
+    static final int LONG = 2;
+
+    static final int DOUBLE = 3;
+
+    private static final AtomicInteger KEY_COUNT = new AtomicInteger();
+
+    private final String name;
+
+    private final int index;
+
+    SlotKey(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("A context key needs a name.");
+        }
+        this.name = name;
+        index = KEY_COUNT.getAndIncrement();
+    }
+
+    /**
+     * @return The number of keys created so far.
+     */
+    static int getKeyCount() {
+        return KEY_COUNT.get();
+    }
+
+    /**
+     * @return The name under which the var shows up in the map of context vars.
+     */
+    public final String getName() {
+        return name;
+    }
+
+    final int getIndex() {
+        return index;
+    }
+
+    abstract int getKind();
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receiver of the traces of sampled executions of call sequences.
+ *
+ * @see CallPolicies#trace(TraceSink, double)
+ */
+public interface TraceSink {
+    /**
+     * Sink that logs the report of each trace.
+     */
+    TraceSink LOG = new TraceSink() {
+        @Override
+        public void onTrace(final ExecutionTrace trace) {
+            LoggerFactory.getLogger(TraceSink.class).info("{}", trace);
+        }
+    };
+
+    /**
+     * Called on the event loop of the sequence once it has committed its outcome, so don't block. Calls that were
+     * still underway at that moment are left out of the trace.
+     *
+     * @param trace The trace of the execution.
+     */
+    void onTrace(final ExecutionTrace trace);
+}
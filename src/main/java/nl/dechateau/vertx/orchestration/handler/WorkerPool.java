@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of worker threads on which handlers can have their results processed, to keep heavy processing (e.g.
+ * de-serializing large payloads) off the event loop.
+ * <p/>
+ * When the queue of the pool is full, the result is processed on the event loop after all, so that the orchestration
+ * is slowed down rather than failed; the number of times this happened is counted, as is the depth of the queue.
+ */
+public final class WorkerPool {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param threads       The number of worker threads.
+     * @param queueCapacity The maximum number of results waiting to be processed.
+     */
+    public WorkerPool(final int threads, final int queueCapacity) {
+        final String prefix = "orchestration-worker-" + POOL_NUMBER.incrementAndGet() + "-";
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+                // Don't keep the JVM (or the Vert.x platform) from shutting down.
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Run a task on the pool, or on the calling thread when the pool is saturated.
+     *
+     * @param task The task.
+     */
+    void execute(final Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            LOG.debug("Worker pool saturated, running task on the calling thread.");
+            task.run();
+            return;
+        }
+
+        final int depth = executor.getQueue().size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * @return The number of results currently waiting to be processed.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The largest number of results that were waiting to be processed at the same time.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of results being processed right now.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The (approximate) number of results processed by the pool.
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return The number of results that were processed on the event loop, because the pool was saturated.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stop the worker threads, after the results already handed to the pool have been processed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
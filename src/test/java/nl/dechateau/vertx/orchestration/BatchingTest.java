@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.BatchedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.RetriedBatchedCallHandler;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class BatchingTest extends TestVerticle {
+    private static final int SEQUENCES = 3;
+
+    // An increase that gives away a reply to the first batch.
+    private static final int STALE_INCREASE = 100;
+
+    private int batches = 0;
+
+    private boolean isSlow = false;
+
+    @Override
+    public void start() {
+        vertx.eventBus().registerHandler(BatchedCallHandler.BATCHED_ADDRESS, new Handler<Message<JsonArray>>() {
+            @Override
+            public void handle(final Message<JsonArray> message) {
+                batches++;
+                final boolean isFirst = batches == 1;
+                final JsonArray replies = new JsonArray();
+                for (Object call : message.body()) {
+                    final Integer number = ((JsonObject) call).getInteger("input");
+                    replies.addObject(new JsonObject().putString("status", "ok")
+                            .putObject("result", new JsonObject().putNumber("output",
+                                    number + (isSlow && isFirst ? STALE_INCREASE : 1))));
+                }
+                final JsonObject reply = new JsonObject().putString("status", "ok").putArray("result", replies);
+                if (!isSlow) {
+                    message.reply(reply);
+                    return;
+                }
+                // The first batch times out, and its reply arrives while the retry is still waiting for its own.
+                final long timeout = RetriedBatchedCallHandler.TIMEOUT;
+                vertx.setTimer(isFirst ? timeout * 3 / 2 : timeout * 3 / 4, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        message.reply(reply);
+                    }
+                });
+            }
+        });
+        super.start();
+    }
+
+    @Test
+    public void concurrentCallsSentAsOneBatch() {
+        final CallSequenceTemplate template = createCallSequence(vertx)
+                .addCall(BatchedCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int waitFor = SEQUENCES;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo((Integer) contextVars.get("expected"))));
+
+                // Have the test complete when all sequences have reported to the listener.
+                if (--waitFor == 0) {
+                    assertThat(batches, is(equalTo(1)));
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test; each sequence should get the reply to its own call.
+        for (int i = 0; i < SEQUENCES; i++) {
+            final CallSequence sequence = template.newSequence();
+            sequence.setContextVar("number", i);
+            sequence.setContextVar("expected", i + 1);
+            sequence.execute(listener);
+        }
+    }
+
+    @Test
+    public void lateBatchReplyIsntTakenForRetry() {
+        isSlow = true;
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(RetriedBatchedCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                // The reply to the retry, not the late one to the first batch.
+                assertThat((Integer) contextVars.get("number"), is(equalTo(2)));
+                assertThat(batches, is(equalTo(2)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+}
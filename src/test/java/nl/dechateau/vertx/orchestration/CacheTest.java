@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.ReplyCache;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class CacheTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        container.deployVerticle(IncreasingVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+            @Override
+            public void handle(AsyncResult<String> event) {
+                CacheTest.super.start();
+                startResult.setResult(null);
+                LOG.trace("CacheTest verticle started.");
+            }
+        });
+    }
+
+    @Test
+    public void repeatedCallAnsweredFromCache() {
+        final ReplyCache cache = new ReplyCache(10, 60000);
+        final CallSequenceTemplate template = createCallSequence(vertx,
+                new CallPolicies().cache(IncreasingVerticle.INCREASING_VERTICLE_ADDRESS, cache))
+                .addCall(IncreaseCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int run = 0;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(2)));
+
+                if (++run == 1) {
+                    // Repeat the same call; this time it should be answered from the cache.
+                    final CallSequence second = template.newSequence();
+                    second.setContextVar("number", 1);
+                    second.execute(listener);
+                } else {
+                    assertThat(cache.getMisses(), is(equalTo(1L)));
+                    assertThat(cache.getHits(), is(equalTo(1L)));
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        final CallSequence first = template.newSequence();
+        first.setContextVar("number", 1);
+        first.execute(listener);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CountedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.DelayedCallHandler;
+import nl.dechateau.vertx.orchestration.verticle.DeadlineVerticle;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class CancellationTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(CancellationTest.class);
+
+    private int countedCalls = 0;
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        vertx.eventBus().registerHandler(CountedCallHandler.COUNTED_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                countedCalls++;
+            }
+        });
+        container.deployVerticle(DeadlineVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+            @Override
+            public void handle(AsyncResult<String> event) {
+                CancellationTest.super.start();
+                startResult.setResult(null);
+                LOG.trace("CancellationTest verticle started.");
+            }
+        });
+    }
+
+    @Test
+    public void noRepliesProcessedAfterTimeout() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(DelayedCallHandler.class)
+                .addCall(CountedCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+        sequence.setTimeout(DelayedCallHandler.DELAY / 3);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Wait until well after the delayed reply has arrived; it should neither have been processed, nor have
+                // started the next unit.
+                vertx.setTimer(DelayedCallHandler.DELAY * 2, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        assertThat((Integer) sequence.setContextVar("number", 0), is(equalTo(1)));
+                        assertThat(countedCalls, is(equalTo(0)));
+                        testComplete();
+                    }
+                });
+                return null;
+            }
+        }).when(listener).onError(eq(ResponseListener.ErrorType.TIMEOUT), anyString());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.CircuitBreaker;
+import nl.dechateau.vertx.orchestration.handler.CoalescedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.ConcurrencyLimit;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class CoalescingTest extends TestVerticle {
+    private static final int SEQUENCES = 3;
+
+    // More than the number of probes a half-open circuit lets through.
+    private static final int BURST = 4;
+
+    private int calls = 0;
+
+    private boolean isFailing = false;
+
+    @Override
+    public void start() {
+        vertx.eventBus().registerHandler(CoalescedCallHandler.COALESCED_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                calls++;
+                if (isFailing) {
+                    message.reply(new JsonObject().putString("status", "error").putString("message", "Failing."));
+                    return;
+                }
+                // Reply a little later, so that the identical calls overlap.
+                vertx.setTimer(100, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        final Integer number = message.body().getInteger("input");
+                        message.reply(new JsonObject().putString("status", "ok")
+                                .putObject("result", new JsonObject().putNumber("output", number + 1)));
+                    }
+                });
+            }
+        });
+        super.start();
+    }
+
+    @Test
+    public void identicalCallsShareOneRequest() {
+        final CallSequenceTemplate template = createCallSequence(vertx,
+                new CallPolicies().coalesce(CoalescedCallHandler.COALESCED_ADDRESS))
+                .addCall(CoalescedCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int waitFor = SEQUENCES;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(2)));
+
+                // Have the test complete when all sequences have reported to the listener.
+                if (--waitFor == 0) {
+                    assertThat(calls, is(equalTo(1)));
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        for (int i = 0; i < SEQUENCES; i++) {
+            final CallSequence sequence = template.newSequence();
+            sequence.setContextVar("number", 1);
+            sequence.execute(listener);
+        }
+    }
+
+    @Test
+    public void identicalCallsTakeOnePermit() {
+        // Room for a single call only.
+        final ConcurrencyLimit limit = new ConcurrencyLimit(1, 1, 0);
+        final CallSequenceTemplate template = createCallSequence(vertx,
+                new CallPolicies()
+                        .coalesce(CoalescedCallHandler.COALESCED_ADDRESS)
+                        .limitCalls(CoalescedCallHandler.COALESCED_ADDRESS, limit))
+                .addCall(CoalescedCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int waitFor = SEQUENCES;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Have the test complete when all sequences got through on the single permit.
+                if (--waitFor == 0) {
+                    assertThat(calls, is(equalTo(1)));
+                    assertThat(limit.getInFlight(), is(equalTo(0)));
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        for (int i = 0; i < SEQUENCES; i++) {
+            final CallSequence sequence = template.newSequence();
+            sequence.setContextVar("number", 1);
+            sequence.execute(listener);
+        }
+    }
+
+    @Test
+    public void identicalCallsTakeOneProbe() {
+        // A single failure opens the circuit, briefly.
+        final CircuitBreaker breaker = new CircuitBreaker(1, 1, 50);
+        final CallSequenceTemplate template = createCallSequence(vertx,
+                new CallPolicies()
+                        .coalesce(CoalescedCallHandler.COALESCED_ADDRESS)
+                        .guard(CoalescedCallHandler.COALESCED_ADDRESS, breaker))
+                .addCall(CoalescedCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int waitFor = BURST;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Have the test complete when all sequences got through the half-open circuit on a single probe.
+                if (--waitFor == 0) {
+                    assertThat(calls, is(equalTo(2)));
+                    assertThat(breaker.getRejectedCount(), is(equalTo(0L)));
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                assertThat(breaker.getState(), is(equalTo(CircuitBreaker.State.OPEN)));
+                isFailing = false;
+                vertx.setTimer(100, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        // More identical calls than there are probes, which only make a single call.
+                        for (int i = 0; i < BURST; i++) {
+                            final CallSequence sequence = template.newSequence();
+                            sequence.setContextVar("number", 1);
+                            sequence.execute(listener);
+                        }
+                    }
+                });
+                return null;
+            }
+        }).when(listener).onError(anyString());
+
+        // Start the test.
+        isFailing = true;
+        final CallSequence sequence = template.newSequence();
+        sequence.setContextVar("number", 1);
+        sequence.execute(listener);
+    }
+}
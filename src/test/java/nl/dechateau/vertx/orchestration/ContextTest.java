@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.Cancellable;
+import nl.dechateau.vertx.orchestration.handler.ContextKey;
+import nl.dechateau.vertx.orchestration.handler.DoubleContextKey;
+import nl.dechateau.vertx.orchestration.handler.IntContextKey;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
+import nl.dechateau.vertx.orchestration.handler.OrchestrationContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ContextTest {
+    private static final IntContextKey NUMBER = new IntContextKey("number");
+
+    private static final DoubleContextKey RATIO = new DoubleContextKey("ratio");
+
+    private static final ContextKey<String> NAME = new ContextKey<>("name");
+
+    private static final int WRITERS = 8;
+
+    private static final int VARS_PER_WRITER = 1000;
+
+    @Test
+    public void concurrentWritersDontLoseVars() throws InterruptedException {
+        final OrchestrationContext context = new OrchestrationContext(null);
+
+        final List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            final int writer = i;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < VARS_PER_WRITER; j++) {
+                        context.setContextVar(writer + "-" + j, j);
+                    }
+                }
+            });
+        }
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        for (int i = 0; i < WRITERS; i++) {
+            for (int j = 0; j < VARS_PER_WRITER; j++) {
+                assertThat((Integer) context.getContextVar(i + "-" + j), is(equalTo(j)));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentWritersDontLoseTypedVars() throws InterruptedException {
+        // Created before the context, so that each key has a slot in it.
+        final IntContextKey[] counts = new IntContextKey[WRITERS];
+        final List<ContextKey<String>> names = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            counts[i] = new IntContextKey("count-" + i);
+            names.add(new ContextKey<String>("name-" + i));
+        }
+        final OrchestrationContext context = new OrchestrationContext(null);
+
+        final List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            final int writer = i;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < VARS_PER_WRITER; j++) {
+                        context.setContextVar(counts[writer], j);
+                        context.setContextVar(names.get(writer), "name-" + j);
+                    }
+                }
+            });
+        }
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        final Map<String, Object> vars = context.getContextVars();
+        for (int i = 0; i < WRITERS; i++) {
+            assertThat(context.getContextVar(counts[i]), is(equalTo(VARS_PER_WRITER - 1)));
+            assertThat(context.getContextVar(names.get(i)), is(equalTo("name-" + (VARS_PER_WRITER - 1))));
+            assertThat((Integer) vars.get("count-" + i), is(equalTo(VARS_PER_WRITER - 1)));
+        }
+    }
+
+    @Test
+    public void settingNullRemovesVar() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        context.setContextVar("number", 1);
+
+        assertThat((Integer) context.setContextVar("number", null), is(equalTo(1)));
+        assertThat(context.getContextVar("number"), is(nullValue()));
+    }
+
+    @Test
+    public void typedVars() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        context.setContextVar(NUMBER, 42);
+        context.setContextVar(RATIO, 0.5);
+        context.setContextVar(NAME, "orchestration");
+
+        assertThat(context.getContextVar(NUMBER), is(equalTo(42)));
+        assertThat(context.getContextVar(RATIO), is(equalTo(0.5)));
+        assertThat(context.getContextVar(NAME), is(equalTo("orchestration")));
+    }
+
+    @Test
+    public void typedVarsOfKeysCreatedLater() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        final IntContextKey late = new IntContextKey("late");
+
+        assertThat(context.getContextVar(late), is(equalTo(0)));
+        context.setContextVar(late, 7);
+        assertThat(context.getContextVar(late), is(equalTo(7)));
+    }
+
+    @Test
+    public void forksDontSeeEachOthersChanges() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        context.setContextVar("shared", "base");
+        context.setContextVar(NUMBER, 1);
+
+        final OrchestrationContext first = context.fork();
+        final OrchestrationContext second = context.fork();
+        first.setContextVar("shared", "first");
+        first.setContextVar(NUMBER, 2);
+        second.setContextVar("shared", null);
+        second.setContextVar(RATIO, 0.5);
+
+        assertThat((String) first.getContextVar("shared"), is(equalTo("first")));
+        assertThat(second.getContextVar("shared"), is(nullValue()));
+        assertThat(second.getContextVar(NUMBER), is(equalTo(1)));
+        assertThat((String) context.getContextVar("shared"), is(equalTo("base")));
+
+        // The second fork removed the var after the first one changed it.
+        final Map<String, Object> vars = context.merge(Arrays.asList(first, second), MergePolicy.LAST_WRITE_WINS);
+        assertThat(vars.containsKey("shared"), is(false));
+        assertThat((Integer) vars.get("number"), is(equalTo(2)));
+        assertThat((Double) vars.get("ratio"), is(equalTo(0.5)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void conflictingForks() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        final OrchestrationContext first = context.fork();
+        final OrchestrationContext second = context.fork();
+        first.setContextVar(NAME, "first");
+        second.setContextVar(NAME, "second");
+
+        context.merge(Arrays.asList(first, second), MergePolicy.FAIL_ON_CONFLICT);
+    }
+
+    @Test
+    public void unregisteredWorkIsntCancelled() {
+        final OrchestrationContext context = new OrchestrationContext(null);
+        final List<String> cancelled = new ArrayList<>();
+        final Cancellable done = new Cancellable() {
+            @Override
+            public void cancel() {
+                cancelled.add("done");
+            }
+        };
+        final Cancellable inProgress = new Cancellable() {
+            @Override
+            public void cancel() {
+                cancelled.add("inProgress");
+            }
+        };
+        context.addCancellable(done);
+        context.addCancellable(inProgress);
+        context.removeCancellable(done);
+
+        // A merged fork is let go of as well.
+        final OrchestrationContext fork = context.fork();
+        context.merge(Arrays.asList(fork), MergePolicy.FAIL_ON_CONFLICT);
+
+        context.cancel();
+        assertThat(cancelled, is(equalTo(Arrays.asList("inProgress"))));
+        assertThat(fork.isCancelled(), is(false));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.CircuitBreaker;
+import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.RetriedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.SlowCallHandler;
+import nl.dechateau.vertx.orchestration.handler.TimeBudgetCallHandler;
+import nl.dechateau.vertx.orchestration.verticle.DeadlineVerticle;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class DeadlineTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadlineTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        Handler<AsyncResult<String>> handler = new Handler<AsyncResult<String>>() {
+            private int waitFor = 2;
+
+            @Override
+            public void handle(AsyncResult<String> event) {
+                if (--waitFor == 0) {
+                    DeadlineTest.super.start();
+                    startResult.setResult(null);
+                    LOG.trace("DeadlineTest verticle started.");
+                }
+            }
+        };
+        container.deployVerticle(IncreasingVerticle.class.getName(), handler);
+        container.deployVerticle(DeadlineVerticle.class.getName(), handler);
+    }
+
+    @Test
+    public void perCallTimeout() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(IncreaseCallHandler.class)
+                .addCall(SlowCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final long start = System.currentTimeMillis();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // The call's own timeout should have fired long before the sequence's (default) timeout.
+                assertTrue(System.currentTimeMillis() - start < 5000);
+
+                // Have the test complete when the onError() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onError(eq(ResponseListener.ErrorType.TIMEOUT), anyString());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void timeBudgetPropagated() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(TimeBudgetCallHandler.class)
+                .build();
+        sequence.setTimeout(5000);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                Long timeBudget = (Long) contextVars.get("timeBudget");
+                assertThat(timeBudget > 0 && timeBudget <= 5000, is(true));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void openCircuitFailsFast() {
+        final CircuitBreaker breaker = new CircuitBreaker(1, 1, 60000);
+        final CallSequenceTemplate template = createCallSequence(vertx,
+                new CallPolicies().guard(DeadlineVerticle.SILENT_VERTICLE_ADDRESS, breaker))
+                .addCall(SlowCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // The timed out call opened the circuit, so the next call isn't even sent.
+                assertThat(breaker.getState(), is(equalTo(CircuitBreaker.State.OPEN)));
+                final CallSequence sequence = template.newSequence();
+                sequence.setContextVar("number", 1);
+                sequence.execute(listener);
+                return null;
+            }
+        }).when(listener).onError(eq(ResponseListener.ErrorType.TIMEOUT), anyString());
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                assertThat(breaker.getRejectedCount(), is(equalTo(1L)));
+
+                // Have the test complete when the onError() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onError(eq(ResponseListener.ErrorType.SERVICE_UNAVAILABLE), anyString());
+
+        // Start the test.
+        final CallSequence sequence = template.newSequence();
+        sequence.setContextVar("number", 1);
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void failedCallRetried() {
+        final long retries = RetriedCallHandler.RETRY_POLICY.getRetryCount();
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(RetriedCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // The first attempt failed, the retry succeeded.
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(2)));
+                assertThat(RetriedCallHandler.RETRY_POLICY.getRetryCount(), is(equalTo(retries + 1)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+}
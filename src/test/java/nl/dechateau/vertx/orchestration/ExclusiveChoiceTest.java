@@ -15,9 +15,13 @@
  */
 package nl.dechateau.vertx.orchestration;
 
+import nl.dechateau.vertx.orchestration.handler.ConditionCallHandler;
 import nl.dechateau.vertx.orchestration.handler.DecisionHandler;
 import nl.dechateau.vertx.orchestration.handler.DecreaseCallHandler;
 import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.ListLookupDecisionHandler;
+import nl.dechateau.vertx.orchestration.handler.LookupDecisionHandler;
 import nl.dechateau.vertx.orchestration.verticle.DecreasingVerticle;
 import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
 import org.junit.Test;
@@ -29,6 +33,9 @@ import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Future;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
 import org.vertx.testtools.TestVerticle;
 
 import java.util.Map;
@@ -36,6 +43,7 @@ import java.util.Map;
 import static nl.dechateau.vertx.orchestration.CallSequence.Builder.*;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.vertx.testtools.VertxAssert.assertThat;
@@ -58,6 +66,13 @@ public class ExclusiveChoiceTest extends TestVerticle {
                 }
             }
         };
+        vertx.eventBus().registerHandler(ListLookupDecisionHandler.LIST_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                message.reply(new JsonObject().putString("status", "ok")
+                        .putArray("result", new JsonArray().addNumber(1).addNumber(2)));
+            }
+        });
         container.deployVerticle(IncreasingVerticle.class.getName(), handler);
         container.deployVerticle(DecreasingVerticle.class.getName(), handler);
     }
@@ -127,4 +142,147 @@ public class ExclusiveChoiceTest extends TestVerticle {
         // Start the test.
         sequence.execute(listener);
     }
+
+    @Test
+    public void speculativeRequest() {
+        CallSequence sequence = createCallSequence(vertx)
+                .addSpeculativeDecision(DecisionHandler.class,
+                        inputs(createCallSequence(vertx)
+                                .addCall(ConditionCallHandler.class)
+                                .build()),
+                        whenTrue(createCallSequence(vertx)
+                                .addCall(IncreaseCallHandler.class)
+                                .build()),
+                        whenFalse(createCallSequence(vertx)
+                                .addCall(DecreaseCallHandler.class)
+                                .build()))
+                .build();
+        sequence.setContextVar("number", 1);
+        sequence.setContextVar("threshold", 1);
+
+        final Integer expectedOutcome = 2;
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                // Only the changes of the chosen path are kept.
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+                assertThat((Boolean) contextVars.get("condition"), is(true));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void lookupRequest() {
+        CallSequence sequence = createCallSequence(vertx)
+                .addDecision(LookupDecisionHandler.class,
+                        whenTrue(createCallSequence(vertx)
+                                .addCall(IncreaseCallHandler.class)
+                                .build()),
+                        whenFalse(createCallSequence(vertx)
+                                .addCall(DecreaseCallHandler.class)
+                                .build()))
+                .build();
+        sequence.setContextVar("number", 1);
+        sequence.setContextVar("threshold", 0);
+
+        final Integer expectedOutcome = 0;
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void lookupOfListRequest() {
+        CallSequence sequence = createCallSequence(vertx)
+                .addDecision(ListLookupDecisionHandler.class,
+                        whenTrue(createCallSequence(vertx)
+                                .addCall(IncreaseCallHandler.class)
+                                .build()),
+                        whenFalse(createCallSequence(vertx)
+                                .addCall(DecreaseCallHandler.class)
+                                .build()))
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final Integer expectedOutcome = 2;
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void lookupOfUnexpectedListFails() {
+        // Only decides on objects, but gets a list.
+        final HandlerFactory<LookupDecisionHandler> decision = new HandlerFactory<LookupDecisionHandler>() {
+            @Override
+            public LookupDecisionHandler newHandler() {
+                return new LookupDecisionHandler() {
+                    @Override
+                    protected String getDestination() {
+                        return ListLookupDecisionHandler.LIST_ADDRESS;
+                    }
+                };
+            }
+        };
+        CallSequence sequence = createCallSequence(vertx)
+                .addDecision(decision,
+                        whenTrue(createCallSequence(vertx)
+                                .addCall(IncreaseCallHandler.class)
+                                .build()),
+                        whenFalse(createCallSequence(vertx)
+                                .addCall(DecreaseCallHandler.class)
+                                .build()))
+                .build();
+        sequence.setContextVar("number", 1);
+        sequence.setContextVar("threshold", 0);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Have the test complete when the onError() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onError(anyString());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.ItemCallHandler;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static nl.dechateau.vertx.orchestration.ForEach.createForEach;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class ForEachTest extends TestVerticle {
+    // The item the called service fails on.
+    private static final int FAILING_ITEM = 0;
+
+    private static final int MAX_CONCURRENCY = 2;
+
+    private int calls = 0;
+
+    private int inFlight = 0;
+
+    private int maxInFlight = 0;
+
+    private int processed = 0;
+
+    @Override
+    public void start() {
+        vertx.eventBus().registerHandler(ItemCallHandler.ITEM_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                calls++;
+                final Integer number = message.body().getInteger("input");
+                if (number == FAILING_ITEM) {
+                    message.reply(new JsonObject().putString("status", "error").putString("message", "Failing."));
+                    return;
+                }
+                // Reply a little later, so that the calls for the items overlap.
+                inFlight++;
+                maxInFlight = Math.max(maxInFlight, inFlight);
+                vertx.setTimer(20, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        inFlight--;
+                        message.reply(new JsonObject().putString("status", "ok")
+                                .putObject("result", new JsonObject().putNumber("output", number + 1)));
+                    }
+                });
+            }
+        });
+        super.start();
+    }
+
+    @Test
+    public void forEachRequest() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addForEach(createForEach("numbers", "number")
+                        .call(ItemCallHandler.class)
+                        .collect("increased", "results")
+                        .maxConcurrency(MAX_CONCURRENCY)
+                        .build())
+                .build();
+        sequence.setContextVar("numbers", Arrays.asList(1, 5, 3, 7, 2));
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((List<Object>) contextVars.get("results"), is(equalTo(Arrays.<Object>asList(2, 6, 4, 8, 3))));
+                // The changes made in the context of each call are discarded.
+                assertThat(contextVars.containsKey("increased"), is(false));
+                // The calls overlapped, but never more of them than allowed.
+                assertThat(maxInFlight, is(equalTo(MAX_CONCURRENCY)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void failingItemStopsTheOthers() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addForEach(createForEach("numbers", "number")
+                        .call(new HandlerFactory<ItemCallHandler>() {
+                            @Override
+                            public ItemCallHandler newHandler() {
+                                return new ItemCallHandler() {
+                                    @Override
+                                    protected void processResult(final JsonObject result) {
+                                        processed++;
+                                        super.processResult(result);
+                                    }
+                                };
+                            }
+                        })
+                        .maxConcurrency(MAX_CONCURRENCY)
+                        .build())
+                .build();
+        sequence.setContextVar("numbers", Arrays.asList(1, FAILING_ITEM, 3, 7, 2));
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Only the calls in the window were made; the items after the failing one were never called.
+                assertThat(calls, is(equalTo(MAX_CONCURRENCY)));
+
+                // Wait for the reply to the call still in progress, which should be ignored.
+                vertx.setTimer(100, new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        assertThat(calls, is(equalTo(MAX_CONCURRENCY)));
+                        assertThat(processed, is(equalTo(0)));
+                        verify(listener, never()).onCompleted(Matchers.<Map<String, Object>>any());
+                        testComplete();
+                    }
+                });
+                return null;
+            }
+        }).when(listener).onError(anyString());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CountedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
+import nl.dechateau.vertx.orchestration.handler.IncreaseVarCallHandler;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallGraph.createCallGraph;
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class GraphTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(GraphTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        container.deployVerticle(IncreasingVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+            @Override
+            public void handle(AsyncResult<String> event) {
+                GraphTest.super.start();
+                startResult.setResult(null);
+                LOG.trace("GraphTest verticle started.");
+            }
+        });
+    }
+
+    @Test
+    public void graphRequest() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCallGraph(createCallGraph()
+                        .addCall(increase("first", "second")).reads("first").produces("second")
+                        .addCall(increase("number", "first")).reads("number").produces("first")
+                        .addCall(increase("number", "third")).reads("number").produces("third")
+                        .build())
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("first"), is(equalTo(2)));
+                assertThat((Integer) contextVars.get("second"), is(equalTo(3)));
+                assertThat((Integer) contextVars.get("third"), is(equalTo(2)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void graphRequestWithImmediateRoot() {
+        final int[] dependentRuns = new int[1];
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCallGraph(createCallGraph()
+                        // A one-way call completes right away, starting the call depending on it.
+                        .addCall(CountedCallHandler.class).reads("number").produces("counted")
+                        .addCall(new HandlerFactory<IncreaseVarCallHandler>() {
+                            @Override
+                            public IncreaseVarCallHandler newHandler() {
+                                dependentRuns[0]++;
+                                return new IncreaseVarCallHandler("number", "second");
+                            }
+                        }).reads("counted").produces("second")
+                        .build())
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("second"), is(equalTo(2)));
+                // The dependent call was started by the root only, not by the scan for calls without dependencies.
+                assertThat(dependentRuns[0], is(equalTo(1)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    private static HandlerFactory<IncreaseVarCallHandler> increase(final String input, final String output) {
+        return new HandlerFactory<IncreaseVarCallHandler>() {
+            @Override
+            public IncreaseVarCallHandler newHandler() {
+                return new IncreaseVarCallHandler(input, output);
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.DelayedCallHandler;
+import nl.dechateau.vertx.orchestration.handler.HedgingPolicy;
+import nl.dechateau.vertx.orchestration.verticle.DeadlineVerticle;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.assertTrue;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class HedgingTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        container.deployVerticle(DeadlineVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+            @Override
+            public void handle(AsyncResult<String> event) {
+                container.deployVerticle(IncreasingVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+                    @Override
+                    public void handle(AsyncResult<String> event) {
+                        HedgingTest.super.start();
+                        startResult.setResult(null);
+                        LOG.trace("HedgingTest verticle started.");
+                    }
+                });
+            }
+        });
+    }
+
+    @Test
+    public void slowCallHedged() {
+        // The hedged call goes to a verticle that replies right away.
+        final CallPolicies policies = new CallPolicies().hedge(DeadlineVerticle.DELAYED_VERTICLE_ADDRESS,
+                new HedgingPolicy(95, DelayedCallHandler.DELAY / 6, 1.0, IncreasingVerticle.INCREASING_VERTICLE_ADDRESS));
+        final CallSequence sequence = createCallSequence(vertx, policies)
+                .addCall(DelayedCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+        final long start = System.currentTimeMillis();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> vars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) vars.get("number"), is(equalTo(2)));
+                assertTrue(System.currentTimeMillis() - start < DelayedCallHandler.DELAY);
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void hedgingBoundByRatio() {
+        // Without any budget for hedging, the slow reply has to be waited for.
+        final CallPolicies policies = new CallPolicies().hedge(DeadlineVerticle.DELAYED_VERTICLE_ADDRESS,
+                new HedgingPolicy(95, DelayedCallHandler.DELAY / 6, 0.0, IncreasingVerticle.INCREASING_VERTICLE_ADDRESS));
+        final CallSequence sequence = createCallSequence(vertx, policies)
+                .addCall(DelayedCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+        final long start = System.currentTimeMillis();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> vars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) vars.get("number"), is(equalTo(2)));
+                assertTrue(System.currentTimeMillis() - start >= DelayedCallHandler.DELAY);
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.LatencyHistogram;
+import nl.dechateau.vertx.orchestration.handler.MetricsRegistry;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class MetricsTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        container.deployVerticle(IncreasingVerticle.class.getName(), new Handler<AsyncResult<String>>() {
+            @Override
+            public void handle(AsyncResult<String> event) {
+                MetricsTest.super.start();
+                startResult.setResult(null);
+                LOG.trace("MetricsTest verticle started.");
+            }
+        });
+    }
+
+    @Test
+    public void measuredRequests() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final CallSequence sequence = createCallSequence(vertx, new CallPolicies().measure(registry))
+                .named("increase")
+                .addCall(IncreaseCallHandler.class)
+                .addCall(IncreaseCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final String destination = "destination." + IncreasingVerticle.INCREASING_VERTICLE_ADDRESS;
+                assertThat(registry.getCount("sequence.increase.completed"), is(equalTo(1L)));
+                assertThat(registry.getCount("sequence.increase.inFlight"), is(equalTo(0L)));
+                assertThat(registry.getCount(destination + ".completed"), is(equalTo(2L)));
+                assertThat(registry.getCount(destination + ".inFlight"), is(equalTo(0L)));
+                assertThat(registry.getHistogram(destination + ".latency").getCount(), is(equalTo(2L)));
+                assertThat(registry.getCount("handler." + IncreaseCallHandler.class.getName() + ".completed"),
+                        is(equalTo(2L)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertThat(histogram.getCount(), is(equalTo(10000L)));
+        assertThat(histogram.getMax(), is(equalTo(10000000L)));
+        // Values are known within about 3%.
+        assertThat(Math.abs(histogram.getValueAtPercentile(50) - 5000000) < 160000, is(true));
+        assertThat(Math.abs(histogram.getValueAtPercentile(99) - 9900000) < 310000, is(true));
+        assertThat(histogram.getValueAtPercentile(100), is(equalTo(10000000L)));
+        testComplete();
+    }
+}
@@ -16,6 +16,7 @@
 package nl.dechateau.vertx.orchestration;
 
 import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.MergePolicy;
 import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
 import org.junit.Test;
 import org.mockito.Matchers;
@@ -33,6 +34,7 @@ import java.util.Map;
 import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.vertx.testtools.VertxAssert.assertThat;
@@ -81,4 +83,27 @@ public class ParallelSplitTest extends TestVerticle {
         // Start the test.
         sequence.execute(listener);
     }
+
+    @Test
+    public void parallelRequestWithConflictingForks() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addParallelCalls(MergePolicy.FAIL_ON_CONFLICT,
+                        IncreaseCallHandler.class,
+                        IncreaseCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Both calls set the same var in their own fork, which this policy doesn't allow.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onError(anyString());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
 }
@@ -15,10 +15,17 @@
  */
 package nl.dechateau.vertx.orchestration;
 
+import nl.dechateau.vertx.orchestration.handler.CallPolicies;
+import nl.dechateau.vertx.orchestration.handler.ConcurrencyLimit;
+import nl.dechateau.vertx.orchestration.handler.ExecutionTrace;
+import nl.dechateau.vertx.orchestration.handler.HandlerFactory;
 import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.TraceSink;
+import nl.dechateau.vertx.orchestration.handler.TypedIncreaseCallHandler;
 import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
 import org.junit.Test;
 import org.mockito.Matchers;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
@@ -33,6 +40,9 @@ import java.util.Map;
 import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.vertx.testtools.VertxAssert.assertThat;
@@ -106,4 +116,168 @@ public class SequenceTest extends TestVerticle {
         // Start the test.
         sequence.execute(listener);
     }
+
+    @Test
+    public void sequentialRequestsFromFactory() {
+        final HandlerFactory<IncreaseCallHandler> increase = new HandlerFactory<IncreaseCallHandler>() {
+            @Override
+            public IncreaseCallHandler newHandler() {
+                return new IncreaseCallHandler();
+            }
+        };
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(increase)
+                .addCall(IncreaseCallHandler.class)
+                .addCall(increase)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final Integer expectedOutcome = 4;
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void sequentialRequestsWithTypedVars() {
+        final CallSequence sequence = createCallSequence(vertx)
+                .addCall(TypedIncreaseCallHandler.class)
+                .addCall(TypedIncreaseCallHandler.class)
+                .build();
+        sequence.setContextVar(TypedIncreaseCallHandler.NUMBER, 1);
+
+        final Integer expectedOutcome = 3;
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // Typed vars show up under the name of their key.
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void tracedRequests() {
+        final TraceSink sink = mock(TraceSink.class);
+        final CallSequence sequence = createCallSequence(vertx, new CallPolicies().trace(sink, 1))
+                .addCall(IncreaseCallHandler.class)
+                .addParallelCalls(IncreaseCallHandler.class, IncreaseCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final ExecutionTrace trace = sequence.getTrace();
+                assertThat(trace.getUnits().size(), is(equalTo(2)));
+                assertThat(trace.getUnits().get(1).getHandlers().size(), is(equalTo(2)));
+                // One handler per unit determined the duration of the sequence.
+                assertThat(trace.getCriticalPath().size(), is(equalTo(2)));
+                assertThat(trace.getCriticalPath().get(0).getReplyTime() > 0, is(true));
+                Mockito.verify(sink).onTrace(Matchers.argThat(sameInstance(trace)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start the test.
+        sequence.execute(listener);
+    }
+
+    @Test
+    public void limitedRequests() {
+        final ConcurrencyLimit limit = new ConcurrencyLimit(1, 1, 1);
+        final CallSequenceTemplate template = createCallSequence(vertx, new CallPolicies().limitSequence("limited", limit))
+                .named("limited")
+                .addCall(IncreaseCallHandler.class)
+                .compile();
+
+        final ResponseListener first = mock(ResponseListener.class);
+        final ResponseListener second = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // The second execution waited for the first one; the third one didn't fit in the queue.
+                Mockito.verify(first).onCompleted(Matchers.<Map<String, Object>>any());
+                assertThat(limit.getRejectedCount(), is(equalTo(1L)));
+                assertThat(limit.getInFlight(), is(equalTo(0)));
+
+                // Have the test complete when the onCompleted() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(second).onCompleted(Matchers.<Map<String, Object>>any());
+        final ResponseListener third = mock(ResponseListener.class);
+
+        // Start the test.
+        for (ResponseListener listener : new ResponseListener[]{first, second, third}) {
+            final CallSequence sequence = template.newSequence();
+            sequence.setContextVar("number", 1);
+            sequence.execute(listener);
+        }
+        Mockito.verify(third).onError(eq(ResponseListener.ErrorType.SERVICE_UNAVAILABLE), anyString());
+    }
+
+    @Test
+    public void timedOutRequestsLeaveQueue() {
+        final ConcurrencyLimit limit = new ConcurrencyLimit(1, 1, 1);
+        final CallSequence sequence = createCallSequence(vertx, new CallPolicies().limitSequence("limited", limit))
+                .named("limited")
+                .addCall(IncreaseCallHandler.class)
+                .build();
+        sequence.setContextVar("number", 1);
+        sequence.setTimeout(50);
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                // The execution gave up its place in the queue, and never got to take a permit.
+                assertThat(limit.getQueueSize(), is(equalTo(0)));
+                limit.release();
+                assertThat(limit.getInFlight(), is(equalTo(0)));
+
+                // Have the test complete when the onError() method on the listener is called.
+                testComplete();
+                return null;
+            }
+        }).when(listener).onError(eq(ResponseListener.ErrorType.TIMEOUT), anyString());
+
+        // Take the only permit, so that the execution has to wait for it.
+        limit.admit(null, new Handler<Void>() {
+            @Override
+            public void handle(final Void event) {
+            }
+        });
+
+        // Start the test.
+        sequence.execute(listener);
+        assertThat(limit.getQueueSize(), is(equalTo(1)));
+    }
 }
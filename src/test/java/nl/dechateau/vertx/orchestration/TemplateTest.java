@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration;
+
+import nl.dechateau.vertx.orchestration.handler.DecisionHandler;
+import nl.dechateau.vertx.orchestration.handler.DecreaseCallHandler;
+import nl.dechateau.vertx.orchestration.handler.IncreaseCallHandler;
+import nl.dechateau.vertx.orchestration.verticle.DecreasingVerticle;
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.testtools.TestVerticle;
+
+import java.util.Map;
+
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.createCallSequence;
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.whenFalse;
+import static nl.dechateau.vertx.orchestration.CallSequence.Builder.whenTrue;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.vertx.testtools.VertxAssert.assertThat;
+import static org.vertx.testtools.VertxAssert.testComplete;
+
+public class TemplateTest extends TestVerticle {
+    private static final Logger LOG = LoggerFactory.getLogger(TemplateTest.class);
+
+    @Override
+    public void start(final Future<Void> startResult) {
+        Handler<AsyncResult<String>> handler = new Handler<AsyncResult<String>>() {
+            private int waitFor = 2;
+
+            @Override
+            public void handle(AsyncResult<String> event) {
+                if (--waitFor == 0) {
+                    TemplateTest.super.start();
+                    startResult.setResult(null);
+                    LOG.trace("TemplateTest verticle started.");
+                }
+            }
+        };
+        container.deployVerticle(IncreasingVerticle.class.getName(), handler);
+        container.deployVerticle(DecreasingVerticle.class.getName(), handler);
+    }
+
+    @Test
+    public void concurrentExecutionsOfOneTemplate() {
+        final CallSequenceTemplate template = createCallSequence(vertx)
+                .addDecision(DecisionHandler.class,
+                        whenTrue(createCallSequence(vertx)
+                                .addCall(IncreaseCallHandler.class)
+                                .compile()),
+                        whenFalse(createCallSequence(vertx)
+                                .addCall(DecreaseCallHandler.class)
+                                .compile()))
+                .addParallelCalls(
+                        IncreaseCallHandler.class,
+                        IncreaseCallHandler.class)
+                .compile();
+
+        final ResponseListener listener = mock(ResponseListener.class);
+        doAnswer(new Answer() {
+            private int waitFor = 2;
+
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                Map<String, Object> contextVars = (Map<String, Object>) invocationOnMock.getArguments()[0];
+                Integer expectedOutcome = (Boolean) contextVars.get("condition") ? 12 : 10;
+                assertThat((Integer) contextVars.get("number"), is(equalTo(expectedOutcome)));
+
+                // Have the test complete when both sequences have reported to the listener.
+                if (--waitFor == 0) {
+                    testComplete();
+                }
+                return null;
+            }
+        }).when(listener).onCompleted(Matchers.<Map<String, Object>>any());
+
+        // Start two executions of the same template, each with its own context.
+        final CallSequence increasing = template.newSequence();
+        increasing.setContextVar("number", 10);
+        increasing.setContextVar("condition", true);
+
+        final CallSequence decreasing = template.newSequence();
+        decreasing.setContextVar("number", 10);
+        decreasing.setContextVar("condition", false);
+
+        increasing.execute(listener);
+        decreasing.execute(listener);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+import nl.dechateau.vertx.orchestration.verticle.IncreasingVerticle;
+import org.vertx.java.core.json.JsonObject;
+
+public class IncreaseVarCallHandler extends AbstractReturningCallHandler {
+    private final String input;
+
+    private final String output;
+
+    public IncreaseVarCallHandler(final String input, final String output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getDestination() {
+        return IncreasingVerticle.INCREASING_VERTICLE_ADDRESS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected JsonObject getCallMessage() {
+        return new JsonObject().putNumber("input", (Integer) getContextVar(input));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void processResult(JsonObject result) {
+        setContextVar(output, result.getInteger("output"));
+    }
+}
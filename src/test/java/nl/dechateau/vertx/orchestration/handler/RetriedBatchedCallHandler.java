@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.handler;
+
+public class RetriedBatchedCallHandler extends BatchedCallHandler {
+    public static final long TIMEOUT = 200;
+
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(2, 10, 10, 1);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getTimeout() {
+        return TIMEOUT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected RetryPolicy getRetryPolicy() {
+        return RETRY_POLICY;
+    }
+}
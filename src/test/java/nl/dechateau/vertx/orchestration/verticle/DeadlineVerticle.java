@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Maurice de Chateau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.dechateau.vertx.orchestration.verticle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.busmods.BusModBase;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+public class DeadlineVerticle extends BusModBase {
+    public static final String SILENT_VERTICLE_ADDRESS = "SILENT_VERTICLE_ADDRESS";
+
+    public static final String TIME_BUDGET_VERTICLE_ADDRESS = "TIME_BUDGET_VERTICLE_ADDRESS";
+
+    public static final String DELAYED_VERTICLE_ADDRESS = "DELAYED_VERTICLE_ADDRESS";
+
+    public static final String FLAKY_VERTICLE_ADDRESS = "FLAKY_VERTICLE_ADDRESS";
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeadlineVerticle.class);
+
+    private int flakyCount = 0;
+
+    @Override
+    public void start() {
+        super.start();
+        eb.registerHandler(SILENT_VERTICLE_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                LOG.info("Message received in DeadlineVerticle, not replying: " + message.body().encode());
+            }
+        });
+        eb.registerHandler(TIME_BUDGET_VERTICLE_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                LOG.info("Message received in DeadlineVerticle: " + message.body().encode());
+                Long timeBudget = message.body().getLong("timeBudget");
+                sendOK(message, new JsonObject().putObject("result", new JsonObject().putNumber("output", timeBudget)));
+            }
+        });
+        eb.registerHandler(DELAYED_VERTICLE_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(final Message<JsonObject> message) {
+                LOG.info("Message received in DeadlineVerticle, replying later: " + message.body().encode());
+                final Integer number = message.body().getInteger("input");
+                vertx.setTimer(message.body().getLong("delay"), new Handler<Long>() {
+                    @Override
+                    public void handle(Long timerId) {
+                        sendOK(message, new JsonObject().putObject("result", new JsonObject().putNumber("output", number + 1)));
+                    }
+                });
+            }
+        });
+        eb.registerHandler(FLAKY_VERTICLE_ADDRESS, new Handler<Message<JsonObject>>() {
+            @Override
+            public void handle(Message<JsonObject> message) {
+                LOG.info("Message received in DeadlineVerticle, failing every other one: " + message.body().encode());
+                if (++flakyCount % 2 == 1) {
+                    sendError(message, "Failing this time.");
+                    return;
+                }
+                Integer number = message.body().getInteger("input");
+                sendOK(message, new JsonObject().putObject("result", new JsonObject().putNumber("output", number + 1)));
+            }
+        });
+        LOG.trace("DeadlineVerticle started.");
+    }
+}